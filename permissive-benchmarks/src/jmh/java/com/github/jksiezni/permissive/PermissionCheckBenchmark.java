@@ -0,0 +1,78 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.content.pm.PackageManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of permission checks, with warm and cold permission cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionCheckBenchmark {
+
+  @Param({"1", "5", "10", "25", "50"})
+  public int size;
+
+  private StubContext context;
+  private String[] permissions;
+
+  @Setup
+  public void setup() {
+    context = new StubContext(size);
+    permissions = context.getDeclaredPermissions();
+    Permissive.invalidatePermissionCache();
+  }
+
+  @Benchmark
+  public boolean checkPermission() {
+    return Permissive.checkPermission(context, permissions[size - 1]);
+  }
+
+  @Benchmark
+  public boolean checkPermissionCold() {
+    Permissive.invalidatePermissionCache();
+    return Permissive.checkPermission(context, permissions[size - 1]);
+  }
+
+  @Benchmark
+  public String[] filterPermissions() {
+    return Permissive.filterPermissions(context, permissions, PackageManager.PERMISSION_GRANTED);
+  }
+
+  @Benchmark
+  public String[] filterPermissionsCold() {
+    Permissive.invalidatePermissionCache();
+    return Permissive.filterPermissions(context, permissions, PackageManager.PERMISSION_GRANTED);
+  }
+
+  @Benchmark
+  public String[] getPermissionsRequiringRationale() {
+    return Permissive.getPermissionsRequiringRationale(context, permissions);
+  }
+}
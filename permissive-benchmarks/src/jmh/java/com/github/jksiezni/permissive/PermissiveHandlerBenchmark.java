@@ -0,0 +1,101 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of actions passing through the state machine of {@link PermissiveHandler}.
+ * The shim of the handler dispatches messages on the calling thread, so a single call
+ * measures a whole round trip: enqueue, dequeue, permission check and callbacks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissiveHandlerBenchmark {
+
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  @Param({"1", "5", "25"})
+  public int size;
+
+  private StubContext context;
+  private String[] permissions;
+  private String[] grantedPermissions;
+  private int completed;
+
+  // listeners are held by weak references, so keep it here
+  private final PermissionsResultListener listener = new PermissionsResultListener() {
+    @Override
+    public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+      ++completed;
+    }
+  };
+
+  @Setup
+  public void setup() {
+    context = new StubContext(size);
+    permissions = context.getDeclaredPermissions();
+    // every other declared permission is granted
+    grantedPermissions = new String[(size + 1) / 2];
+    for (int i = 0; i < grantedPermissions.length; ++i) {
+      grantedPermissions[i] = permissions[i * 2];
+    }
+    Permissive.invalidatePermissionCache();
+  }
+
+  @TearDown
+  public void tearDown() {
+    Permissive.setSynchronousFastPath(false);
+  }
+
+  @Benchmark
+  public int executeAction() {
+    Permissive.setSynchronousFastPath(false);
+    new Permissive.Action<>(permissions).whenPermissionsResultReceived(listener).execute(context);
+    return completed;
+  }
+
+  @Benchmark
+  public int executeActionOnExecutor() {
+    new Permissive.Action<>(permissions).whenPermissionsResultReceived(listener).execute(context, DIRECT_EXECUTOR);
+    return completed;
+  }
+
+  @Benchmark
+  public int executeActionFastPath() {
+    Permissive.setSynchronousFastPath(true);
+    new Permissive.Action<>(grantedPermissions).whenPermissionsResultReceived(listener).execute(context);
+    return completed;
+  }
+}
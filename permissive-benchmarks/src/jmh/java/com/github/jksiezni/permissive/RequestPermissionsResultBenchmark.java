@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.content.pm.PackageManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of building results and dispatching them to listeners.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestPermissionsResultBenchmark {
+
+  @Param({"1", "5", "10", "25", "50"})
+  public int size;
+
+  private String[] permissions;
+  private int[] grantResults;
+  private RequestPermissionsResult result;
+  private Permissive.Action<StubContext> action;
+
+  // listeners are held by weak references, so keep them here
+  private PermissionsGrantedListener grantedListener;
+  private PermissionsRefusedListener refusedListener;
+  private PermissionsResultListener resultListener;
+
+  @Setup
+  public void setup(final Blackhole blackhole) {
+    permissions = StubContext.createPermissions(size);
+    grantResults = new int[size];
+    for (int i = 0; i < size; ++i) {
+      grantResults[i] = i % 2 == 0 ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+    }
+    result = new RequestPermissionsResult(permissions, grantResults);
+
+    grantedListener = new PermissionsGrantedListener() {
+      @Override
+      public void onPermissionsGranted(String[] permissions) {
+        blackhole.consume(permissions);
+      }
+    };
+    refusedListener = new PermissionsRefusedListener() {
+      @Override
+      public void onPermissionsRefused(String[] permissions) {
+        blackhole.consume(permissions);
+      }
+    };
+    resultListener = new PermissionsResultListener() {
+      @Override
+      public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+        blackhole.consume(grantedPermissions);
+        blackhole.consume(refusedPermissions);
+      }
+    };
+    action = new Permissive.Action<StubContext>(permissions)
+        .whenPermissionsGranted(grantedListener)
+        .whenPermissionsRefused(refusedListener)
+        .whenPermissionsResultReceived(resultListener);
+  }
+
+  @Benchmark
+  public RequestPermissionsResult createResult() {
+    return new RequestPermissionsResult(permissions, grantResults);
+  }
+
+  @Benchmark
+  public void fireActionCallbacks() {
+    PermissiveHandler.fireActionCallbacks(action, result);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+/**
+ * A context with a fixed set of declared permissions, where every other permission is granted.
+ */
+class StubContext extends Activity {
+
+  private final String[] permissions;
+  private final int[] flags;
+  private final PackageManager packageManager = new PackageManager() {
+    @Override
+    public PackageInfo getPackageInfo(String packageName, int flags) {
+      final PackageInfo packageInfo = new PackageInfo();
+      packageInfo.packageName = packageName;
+      packageInfo.requestedPermissions = permissions.clone();
+      packageInfo.requestedPermissionsFlags = StubContext.this.flags.clone();
+      return packageInfo;
+    }
+  };
+
+  /**
+   * @param count A number of declared permissions.
+   */
+  StubContext(int count) {
+    permissions = createPermissions(count);
+    flags = new int[count];
+    for (int i = 0; i < count; i += 2) {
+      flags[i] = PackageInfo.REQUESTED_PERMISSION_GRANTED;
+    }
+  }
+
+  static String[] createPermissions(int count) {
+    final String[] permissions = new String[count];
+    for (int i = 0; i < count; ++i) {
+      permissions[i] = "com.github.jksiezni.permissive.benchmarks.PERMISSION_" + i;
+    }
+    return permissions;
+  }
+
+  String[] getDeclaredPermissions() {
+    return permissions;
+  }
+
+  @Override
+  public int checkPermission(String permission, int pid, int uid) {
+    for (int i = 0; i < permissions.length; ++i) {
+      if (permissions[i].equals(permission)) {
+        return (flags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0
+            ? PackageManager.PERMISSION_GRANTED
+            : PackageManager.PERMISSION_DENIED;
+      }
+    }
+    return PackageManager.PERMISSION_GRANTED;
+  }
+
+  @Override
+  public boolean shouldShowRequestPermissionRationale(String permission) {
+    return true;
+  }
+
+  @Override
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  @Override
+  public PackageManager getPackageManager() {
+    return packageManager;
+  }
+
+  @Override
+  public String getPackageName() {
+    return "com.github.jksiezni.permissive.benchmarks";
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.app;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
+/**
+ * A minimal shim of the Android API, which allows to run the library on a plain JVM.
+ */
+public class Application extends Context {
+
+  public interface ActivityLifecycleCallbacks {
+    void onActivityCreated(Activity activity, Bundle savedInstanceState);
+
+    void onActivityStarted(Activity activity);
+
+    void onActivityResumed(Activity activity);
+
+    void onActivityPaused(Activity activity);
+
+    void onActivityStopped(Activity activity);
+
+    void onActivitySaveInstanceState(Activity activity, Bundle outState);
+
+    void onActivityDestroyed(Activity activity);
+  }
+
+  @Override
+  public int checkPermission(String permission, int pid, int uid) {
+    return PackageManager.PERMISSION_DENIED;
+  }
+
+  @Override
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  @Override
+  public PackageManager getPackageManager() {
+    return null;
+  }
+
+  @Override
+  public String getPackageName() {
+    return null;
+  }
+
+  public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.app;
+
+import android.os.Bundle;
+
+/**
+ * A minimal shim of the Android API, which allows to run the library on a plain JVM.
+ */
+public class Fragment {
+  private Bundle arguments;
+
+  public void onCreate(Bundle savedInstanceState) {
+  }
+
+  public void onActivityCreated(Bundle savedInstanceState) {
+  }
+
+  public void onStart() {
+  }
+
+  public void onResume() {
+  }
+
+  public void onDestroy() {
+  }
+
+  public void onSaveInstanceState(Bundle outState) {
+  }
+
+  public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+  }
+
+  public final void requestPermissions(String[] permissions, int requestCode) {
+  }
+
+  public void setRetainInstance(boolean retain) {
+  }
+
+  public Bundle getArguments() {
+    return arguments;
+  }
+
+  public void setArguments(Bundle args) {
+    arguments = args;
+  }
+
+  public final Activity getActivity() {
+    return null;
+  }
+
+  public final boolean isResumed() {
+    return false;
+  }
+
+  public final boolean isRemoving() {
+    return false;
+  }
+
+  public final FragmentManager getFragmentManager() {
+    return null;
+  }
+}
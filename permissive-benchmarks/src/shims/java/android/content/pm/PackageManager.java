@@ -0,0 +1,41 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.content.pm;
+
+import java.util.List;
+
+/**
+ * A minimal shim of the Android API, which allows to run the library on a plain JVM.
+ */
+public abstract class PackageManager {
+  public static final int PERMISSION_GRANTED = 0;
+  public static final int PERMISSION_DENIED = -1;
+  public static final int GET_PERMISSIONS = 0x00001000;
+
+  public static class NameNotFoundException extends Exception {
+  }
+
+  public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+
+  public PermissionInfo getPermissionInfo(String name, int flags) throws NameNotFoundException {
+    throw new NameNotFoundException();
+  }
+
+  public List<PermissionInfo> queryPermissionsByGroup(String group, int flags) throws NameNotFoundException {
+    throw new NameNotFoundException();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * A minimal shim of the Android API, which allows to run the library on a plain JVM.
+ */
+public class Build {
+
+  public static class VERSION {
+    /* Not a compile-time constant, so the value can be changed with -Dandroid.sdk=... */
+    public static final int SDK_INT = Integer.getInteger("android.sdk", VERSION_CODES.P);
+  }
+
+  public static class VERSION_CODES {
+    public static final int ICE_CREAM_SANDWICH = 14;
+    public static final int JELLY_BEAN = 16;
+    public static final int JELLY_BEAN_MR2 = 18;
+    public static final int M = 23;
+    public static final int N = 24;
+    public static final int P = 28;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A minimal shim of the Android API, which allows to run the library on a plain JVM.
+ */
+public class Bundle {
+  private final Map<String, Object> values = new HashMap<>();
+
+  public void putBoolean(String key, boolean value) {
+    values.put(key, value);
+  }
+
+  public boolean getBoolean(String key) {
+    final Object value = values.get(key);
+    return value != null && (Boolean) value;
+  }
+
+  public void putInt(String key, int value) {
+    values.put(key, value);
+  }
+
+  public int getInt(String key) {
+    final Object value = values.get(key);
+    return value != null ? (Integer) value : 0;
+  }
+
+  public void putLong(String key, long value) {
+    values.put(key, value);
+  }
+
+  public long getLong(String key) {
+    final Object value = values.get(key);
+    return value != null ? (Long) value : 0;
+  }
+
+  public void putString(String key, String value) {
+    values.put(key, value);
+  }
+
+  public String getString(String key) {
+    return (String) values.get(key);
+  }
+
+  public void putIntArray(String key, int[] value) {
+    values.put(key, value);
+  }
+
+  public int[] getIntArray(String key) {
+    return (int[]) values.get(key);
+  }
+
+  public void putLongArray(String key, long[] value) {
+    values.put(key, value);
+  }
+
+  public long[] getLongArray(String key) {
+    return (long[]) values.get(key);
+  }
+
+  public void putBundle(String key, Bundle value) {
+    values.put(key, value);
+  }
+
+  public Bundle getBundle(String key) {
+    return (Bundle) values.get(key);
+  }
+
+  public void putStringArray(String key, String[] value) {
+    values.put(key, value);
+  }
+
+  public String[] getStringArray(String key) {
+    return (String[]) values.get(key);
+  }
+
+  public void putParcelable(String key, Parcelable value) {
+    values.put(key, value);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T extends Parcelable> T getParcelable(String key) {
+    return (T) values.get(key);
+  }
+}
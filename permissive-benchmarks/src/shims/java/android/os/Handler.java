@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * A minimal shim of the Android API, which allows to run the library on a plain JVM.
+ */
+public class Handler {
+
+  public interface Callback {
+    boolean handleMessage(Message msg);
+  }
+
+  private final Looper looper;
+  private final Callback callback;
+
+  public Handler(Looper looper) {
+    this(looper, null);
+  }
+
+  public Handler(Looper looper, Callback callback) {
+    this.looper = looper;
+    this.callback = callback;
+  }
+
+  public final Looper getLooper() {
+    return looper;
+  }
+
+  public final Message obtainMessage(int what, Object obj) {
+    return obtainMessage(what, 0, 0, obj);
+  }
+
+  public final Message obtainMessage(int what, int arg1, int arg2, Object obj) {
+    final Message msg = Message.obtain();
+    msg.what = what;
+    msg.arg1 = arg1;
+    msg.arg2 = arg2;
+    msg.obj = obj;
+    msg.target = this;
+    return msg;
+  }
+
+  /* Messages are dispatched immediately on the calling thread. */
+  public final boolean sendMessage(Message msg) {
+    callback.handleMessage(msg);
+    return true;
+  }
+
+  /* Runnables are run immediately on the calling thread. */
+  public final boolean post(Runnable r) {
+    r.run();
+    return true;
+  }
+
+  /* Delayed messages are dropped. */
+  public final boolean sendMessageDelayed(Message msg, long delayMillis) {
+    return true;
+  }
+
+  public final boolean hasMessages(int what) {
+    return false;
+  }
+
+  public final boolean hasMessages(int what, Object object) {
+    return false;
+  }
+
+  public final void removeMessages(int what, Object object) {
+  }
+}
@@ -91,7 +91,17 @@ class PermissiveContext extends ContextWrapper {
 
       @Override
       public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
-        return pm.getPackageInfo(packageName, flags);
+        final PackageInfo packageInfo = pm.getPackageInfo(packageName, flags);
+        if (getPackageName().equals(packageName) && packageInfo.requestedPermissionsFlags != null) {
+          for (int i = 0; i < packageInfo.requestedPermissions.length; ++i) {
+            if (PermissiveTesting.checkFakePermission(packageInfo.requestedPermissions[i]) == PERMISSION_GRANTED) {
+              packageInfo.requestedPermissionsFlags[i] |= PackageInfo.REQUESTED_PERMISSION_GRANTED;
+            } else {
+              packageInfo.requestedPermissionsFlags[i] &= ~PackageInfo.REQUESTED_PERMISSION_GRANTED;
+            }
+          }
+        }
+        return packageInfo;
       }
 
       @Override
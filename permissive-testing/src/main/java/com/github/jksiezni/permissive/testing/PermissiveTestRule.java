@@ -32,6 +32,8 @@ import android.support.test.runner.lifecycle.ActivityLifecycleMonitorRegistry;
 import android.support.test.runner.lifecycle.Stage;
 import android.util.Log;
 
+import com.github.jksiezni.permissive.Permissive;
+
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
@@ -106,6 +108,7 @@ public class PermissiveTestRule<T extends Activity> extends IntentsTestRule<T> {
     for(String fakePerm : fakePermissions) {
       permissiveTesting.grantFakePermission(fakePerm);
     }
+    Permissive.invalidatePermissionCache();
     ActivityLifecycleMonitorRegistry.getInstance().addLifecycleCallback(activityLifecycleCallback);
     super.beforeActivityLaunched();
   }
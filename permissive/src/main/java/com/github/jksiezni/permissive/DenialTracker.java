@@ -0,0 +1,259 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Process;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks permissions, which were denied with "Never ask again", so requests don't display
+ * a permissions dialog, that would be denied by the system immediately anyway.
+ *
+ * <p>The system doesn't expose this state, so it's inferred from
+ * {@link Activity#shouldShowRequestPermissionRationale(String)} before and after each dialog.
+ * A permission is denied permanently only, when a rationale was expected before the dialog,
+ * and it's not expected anymore after the permission is denied. So a dialog dismissed
+ * for the first time is never taken as a permanent denial.</p>
+ *
+ * <p>States are persisted in {@link SharedPreferences}, which are read on a background thread.
+ * Until they are loaded, every permission can be asked. A permanent denial is forgotten,
+ * when the permission is granted, or a rationale is expected for it again, because the user
+ * changed it in Settings.</p>
+ */
+@TargetApi(Build.VERSION_CODES.M)
+final class DenialTracker {
+  private static final String PREFERENCES_NAME = "com.github.jksiezni.permissive.denials";
+
+  private static final int DENIED = 1;
+  private static final int NEVER_ASK_AGAIN = 2;
+
+  private static final Executor BACKGROUND_LOADER = new Executor() {
+    @Override
+    public void execute(final Runnable command) {
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          command.run();
+        }
+      }, "Permissive-denials");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  };
+
+  private final ConcurrentHashMap<String, Integer> states = new ConcurrentHashMap<>();
+  /* permissions forgotten before persisted states were loaded */
+  private final Set<String> forgotten = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Executor loader;
+  private final AtomicBoolean loading = new AtomicBoolean();
+  private volatile SharedPreferences preferences;
+  private volatile boolean loaded;
+
+  DenialTracker() {
+    this(BACKGROUND_LOADER);
+  }
+
+  /**
+   * @param loader An executor used to load persisted states, when they are needed on the main thread.
+   */
+  DenialTracker(Executor loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * Loads persisted states, if they are not loaded yet. It reads from disk,
+   * so {@link Permissive#init(android.app.Application)} calls it on a background thread.
+   */
+  void load(Context context) {
+    if (loaded) {
+      return;
+    }
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+      final Context appContext = context.getApplicationContext();
+      final SharedPreferences prefs = (appContext != null ? appContext : context)
+          .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+      if (prefs != null) {
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+          if (entry.getValue() instanceof Integer && !forgotten.contains(entry.getKey())) {
+            states.putIfAbsent(entry.getKey(), (Integer) entry.getValue());
+          }
+        }
+        preferences = prefs;
+        // states changed in the meantime were not persisted yet
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, Integer> entry : states.entrySet()) {
+          editor.putInt(entry.getKey(), entry.getValue());
+        }
+        for (String permission : forgotten) {
+          editor.remove(permission);
+        }
+        editor.apply();
+      }
+      forgotten.clear();
+      loaded = true;
+    }
+  }
+
+  /**
+   * Starts loading persisted states on the loader, so the calling thread never reads from disk.
+   */
+  private void loadAsync(Context context) {
+    if (loaded || !loading.compareAndSet(false, true)) {
+      return;
+    }
+    final Context appContext = context.getApplicationContext();
+    final Context loadContext = appContext != null ? appContext : context;
+    loader.execute(new Runnable() {
+      @Override
+      public void run() {
+        load(loadContext);
+      }
+    });
+  }
+
+  /**
+   * @return Permissions, for which a rationale is expected right before the permissions dialog.
+   */
+  String[] expectingRationale(Activity activity, String[] permissions) {
+    int count = 0;
+    final boolean[] expected = new boolean[permissions.length];
+    for (int i = 0; i < permissions.length; ++i) {
+      if (activity.shouldShowRequestPermissionRationale(permissions[i])) {
+        expected[i] = true;
+        ++count;
+      }
+    }
+    final String[] result = new String[count];
+    for (int i = 0, j = 0; j < count; ++i) {
+      if (expected[i]) {
+        result[j++] = permissions[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Updates states with results of a permissions dialog.
+   *
+   * @param activity The Activity, which displayed the dialog.
+   * @param permissions Asked permissions.
+   * @param grantResults Grant results. It's empty, when the dialog was interrupted.
+   * @param rationaleBefore Permissions, for which a rationale was expected before the dialog.
+   */
+  void onPermissionsResult(Activity activity, String[] permissions, int[] grantResults, String[] rationaleBefore) {
+    loadAsync(activity);
+    final PermissionSet before = PermissionSet.of(rationaleBefore);
+    final int count = Math.min(permissions.length, grantResults.length);
+    for (int i = 0; i < count; ++i) {
+      final String permission = permissions[i];
+      if (grantResults[i] == PackageManager.PERMISSION_GRANTED) {
+        forget(permission);
+      } else if (activity.shouldShowRequestPermissionRationale(permission)) {
+        put(permission, DENIED);
+      } else if (before.contains(permission)) {
+        // a rationale was expected, but the system doesn't expect it anymore
+        put(permission, NEVER_ASK_AGAIN);
+      } else {
+        put(permission, DENIED);
+      }
+    }
+  }
+
+  /**
+   * Filters out permissions, that were denied permanently.
+   * States of permissions, that are granted in the meantime, are forgotten.
+   *
+   * @return The same array, if all permissions can be asked, otherwise a new one.
+   */
+  String[] filterAskable(Activity activity, String[] permissions) {
+    loadAsync(activity);
+    int count = 0;
+    final boolean[] askable = new boolean[permissions.length];
+    for (int i = 0; i < permissions.length; ++i) {
+      if (!isNeverAskAgain(activity, permissions[i])) {
+        askable[i] = true;
+        ++count;
+      }
+    }
+    if (count == permissions.length) {
+      return permissions;
+    }
+    final String[] filtered = new String[count];
+    for (int i = 0, j = 0; j < count; ++i) {
+      if (askable[i]) {
+        filtered[j++] = permissions[i];
+      }
+    }
+    return filtered;
+  }
+
+  private boolean isNeverAskAgain(Activity activity, String permission) {
+    final Integer state = states.get(permission);
+    if (state == null) {
+      return false;
+    }
+    if (activity.checkPermission(permission, Process.myPid(), Process.myUid()) == PackageManager.PERMISSION_GRANTED) {
+      // the user granted it in Settings
+      forget(permission);
+      return false;
+    }
+    if (state != NEVER_ASK_AGAIN) {
+      return false;
+    }
+    if (activity.shouldShowRequestPermissionRationale(permission)) {
+      // the user changed it in Settings, so it can be asked again
+      put(permission, DENIED);
+      return false;
+    }
+    return true;
+  }
+
+  private void put(String permission, int state) {
+    final Integer previous = states.put(permission, state);
+    final SharedPreferences prefs = preferences;
+    if (prefs != null && (previous == null || previous != state)) {
+      prefs.edit().putInt(permission, state).apply();
+    }
+  }
+
+  private void forget(String permission) {
+    final SharedPreferences prefs = preferences;
+    if (prefs == null && !loaded) {
+      // it may be still persisted, so it's removed once states are loaded
+      forgotten.add(permission);
+    }
+    if (states.remove(permission) != null && prefs != null) {
+      prefs.edit().remove(permission).apply();
+    }
+  }
+}
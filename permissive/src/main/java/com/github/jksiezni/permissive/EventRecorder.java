@@ -0,0 +1,175 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed-size ring buffer of structured events, that allows to reconstruct the history
+ * of permissions handling.
+ *
+ * <p>Events are stored in primitive arrays, so recording doesn't allocate and it's cheap enough
+ * to stay enabled in release builds. Recording is lock-free and can be performed from any thread.
+ * The history can be printed on demand with {@link Permissive#dumpEvents(PrintWriter)}.</p>
+ */
+final class EventRecorder {
+  private static final String TAG = "Permissive";
+  private static final boolean DEBUG = BuildConfig.DEBUG;
+
+  static final int ENQUEUE = 1;
+  static final int DEQUEUE = 2;
+  static final int MESSAGE = 3;
+  static final int ASK_PERMISSIONS = 4;
+  static final int SHOW_RATIONALE = 5;
+  static final int COALESCE = 6;
+  static final int FINALIZE = 7;
+  static final int FRAGMENT_CREATE = 8;
+  static final int FRAGMENT_START = 9;
+  static final int FRAGMENT_RESUME = 10;
+  static final int FRAGMENT_DESTROY = 11;
+  static final int FRAGMENT_RESULT = 12;
+  static final int FRAGMENT_SAVE_STATE = 13;
+  static final int REPEAT_SENT = 14;
+  static final int CANCEL_SENT = 15;
+  static final int REMOVE = 16;
+  static final int STAGE_TIMEOUT = 17;
+
+  private static String getEventString(int type) {
+    switch (type) {
+      case ENQUEUE:
+        return "ENQUEUE";
+      case DEQUEUE:
+        return "DEQUEUE";
+      case MESSAGE:
+        return "MESSAGE";
+      case ASK_PERMISSIONS:
+        return "ASK_PERMISSIONS";
+      case SHOW_RATIONALE:
+        return "SHOW_RATIONALE";
+      case COALESCE:
+        return "COALESCE";
+      case FINALIZE:
+        return "FINALIZE";
+      case FRAGMENT_CREATE:
+        return "FRAGMENT_CREATE";
+      case FRAGMENT_START:
+        return "FRAGMENT_START";
+      case FRAGMENT_RESUME:
+        return "FRAGMENT_RESUME";
+      case FRAGMENT_DESTROY:
+        return "FRAGMENT_DESTROY";
+      case FRAGMENT_RESULT:
+        return "FRAGMENT_RESULT";
+      case FRAGMENT_SAVE_STATE:
+        return "FRAGMENT_SAVE_STATE";
+      case REPEAT_SENT:
+        return "REPEAT_SENT";
+      case CANCEL_SENT:
+        return "CANCEL_SENT";
+      case REMOVE:
+        return "REMOVE";
+      case STAGE_TIMEOUT:
+        return "STAGE_TIMEOUT";
+      default:
+        return "Unknown event: " + type;
+    }
+  }
+
+  private final int capacity;
+  private final long[] timestamps;
+  private final int[] types;
+  private final int[] actionIds;
+  private final int[] laneIds;
+  private final int[] args;
+  private final long[] permissions;
+  private final AtomicInteger counter = new AtomicInteger();
+
+  EventRecorder(int capacity) {
+    this.capacity = capacity;
+    this.timestamps = new long[capacity];
+    this.types = new int[capacity];
+    this.actionIds = new int[capacity];
+    this.laneIds = new int[capacity];
+    this.args = new int[capacity];
+    this.permissions = new long[capacity];
+  }
+
+  /**
+   * Records an event.
+   *
+   * @param type One of event types.
+   * @param actionId An id of the related action, or {@code 0}.
+   * @param laneId An id of the related lane, or {@code 0}.
+   * @param arg An event specific argument, for example a message type or a queue depth.
+   * @param permissionSet Related permissions, or {@code null}. Only permissions with ids below 64 are recorded.
+   */
+  void record(int type, int actionId, int laneId, int arg, PermissionSet permissionSet) {
+    final int slot = (counter.getAndIncrement() & Integer.MAX_VALUE) % capacity;
+    timestamps[slot] = SystemClock.uptimeMillis();
+    types[slot] = type;
+    actionIds[slot] = actionId;
+    laneIds[slot] = laneId;
+    args[slot] = arg;
+    permissions[slot] = permissionSet != null ? permissionSet.firstWord() : 0;
+    if (DEBUG) {
+      Log.v(TAG, formatEvent(slot));
+    }
+  }
+
+  void record(int type, Permissive.Action action, int laneId, int arg) {
+    record(type, action.id, laneId, arg, action.getPermissionSet());
+  }
+
+  /**
+   * Prints recorded events, from the oldest to the newest one.
+   *
+   * @param writer A writer for events.
+   */
+  void dump(PrintWriter writer) {
+    final int count = counter.get() & Integer.MAX_VALUE;
+    final int size = Math.min(count, capacity);
+    for (int i = count - size; i < count; ++i) {
+      writer.println(formatEvent(i % capacity));
+    }
+    writer.flush();
+  }
+
+  private String formatEvent(int slot) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(timestamps[slot])
+        .append(' ')
+        .append(getEventString(types[slot]))
+        .append(" action=").append(actionIds[slot])
+        .append(" lane=").append(laneIds[slot])
+        .append(" arg=").append(args[slot]);
+    final long bits = permissions[slot];
+    if (bits != 0) {
+      builder.append(" permissions=[");
+      for (int id = 0; id < 64; ++id) {
+        if ((bits & (1L << id)) != 0) {
+          builder.append(PermissionRegistry.nameOf(id)).append(',');
+        }
+      }
+      builder.setCharAt(builder.length() - 1, ']');
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A registry of actions scoped to an Activity with {@link Permissive.Action#scopedTo(Activity, String)}.
+ *
+ * <p>Listeners and the rationale of a scoped action are held strongly, until the action completes
+ * or the owner is destroyed. When the owner is recreated after a configuration change, the action
+ * is only detached: a result received in the meantime is kept, and delivered to a listener
+ * re-registered with {@link Permissive#reattachListener(Activity, String, PermissionsResultListener)}.
+ * Pending requests are also saved in the instance state of the owner, see {@link SavedRequests}.</p>
+ */
+final class LifecycleScopes {
+
+  static final class Scope {
+    final String key;
+    final Permissive.Action<?> action;
+    /* the class of the owner, used to match a recreated Activity */
+    final Class<? extends Activity> ownerClass;
+    WeakReference<Activity> ownerRef;
+    /* strong references of listeners, null when detached */
+    Object[] listeners;
+    RequestPermissionsResult pendingResult;
+
+    Scope(Activity owner, String key, Permissive.Action<?> action) {
+      this.key = key;
+      this.action = action;
+      this.ownerClass = owner.getClass();
+      this.ownerRef = new WeakReference<>(owner);
+    }
+
+    boolean isDetached() {
+      return ownerRef == null;
+    }
+
+    void capture() {
+      if (ownerRef != null) {
+        listeners = action.getListeners();
+      }
+    }
+  }
+
+  private final List<Scope> scopes = new ArrayList<>();
+  private boolean callbacksRegistered;
+
+  synchronized Scope attach(Activity owner, String key, Permissive.Action<?> action) {
+    for (int i = scopes.size() - 1; i >= 0; --i) {
+      final Scope scope = scopes.get(i);
+      if (scope.key.equals(key) && scope.ownerClass == owner.getClass()) {
+        // the key is reused, so the previous action is not interesting anymore
+        release(scope);
+      }
+    }
+    final Scope scope = new Scope(owner, key, action);
+    scope.capture();
+    scopes.add(scope);
+    registerLifecycleCallbacks(owner);
+    return scope;
+  }
+
+  /**
+   * Attaches a request restored after the process was killed. It's detached immediately,
+   * so its result is kept until a listener is reattached.
+   */
+  synchronized Scope restore(Activity owner, String key, Permissive.Action<?> action) {
+    final Scope scope = attach(owner, key, action);
+    scope.ownerRef = null;
+    scope.listeners = null;
+    return scope;
+  }
+
+  /**
+   * Decides, whether the result can be delivered to listeners right now.
+   * A result of a detached action is kept until a listener is reattached.
+   */
+  synchronized boolean deliver(Scope scope, RequestPermissionsResult result) {
+    if (scope.isDetached()) {
+      scope.pendingResult = result;
+      return false;
+    }
+    return true;
+  }
+
+  synchronized void release(Scope scope) {
+    scopes.remove(scope);
+    scope.listeners = null;
+    scope.action.scope = null;
+  }
+
+  boolean reattach(Activity owner, String key, PermissionsResultListener listener) {
+    final Scope scope;
+    final RequestPermissionsResult result;
+    synchronized (this) {
+      scope = findDetached(owner, key);
+      if (scope == null) {
+        return false;
+      }
+      scope.ownerRef = new WeakReference<>(owner);
+      scope.action.whenPermissionsResultReceived(listener);
+      result = scope.pendingResult;
+      scope.pendingResult = null;
+    }
+    if (result != null) {
+      release(scope);
+      listener.onPermissionsResult(result.grantedPermissions(), result.refusedPermissions());
+    }
+    return true;
+  }
+
+  private Scope findDetached(Activity owner, String key) {
+    for (Scope scope : scopes) {
+      if (scope.isDetached() && scope.key.equals(key) && scope.ownerClass == owner.getClass()) {
+        return scope;
+      }
+    }
+    return null;
+  }
+
+  synchronized void onOwnerDestroyed(Activity activity, boolean changingConfigurations) {
+    for (int i = scopes.size() - 1; i >= 0; --i) {
+      final Scope scope = scopes.get(i);
+      if (scope.ownerRef == null || scope.ownerRef.get() != activity) {
+        continue;
+      }
+      // listeners usually capture the owner, so they must not outlive it
+      scope.action.clearListeners();
+      if (changingConfigurations) {
+        scope.ownerRef = null;
+        scope.listeners = null;
+      } else {
+        release(scope);
+      }
+    }
+  }
+
+  private void registerLifecycleCallbacks(Activity owner) {
+    registerLifecycleCallbacks(owner.getApplication());
+  }
+
+  synchronized void registerLifecycleCallbacks(Application application) {
+    if (callbacksRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+      return;
+    }
+    if (application != null) {
+      callbacksRegistered = true;
+      registerReleaser(application);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  private void registerReleaser(Application application) {
+    application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+      @Override
+      public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (savedInstanceState != null) {
+          SavedRequests.restore(activity, savedInstanceState);
+        }
+      }
+
+      @Override
+      public void onActivityStarted(Activity activity) {
+      }
+
+      @Override
+      public void onActivityResumed(Activity activity) {
+      }
+
+      @Override
+      public void onActivityPaused(Activity activity) {
+      }
+
+      @Override
+      public void onActivityStopped(Activity activity) {
+      }
+
+      @Override
+      public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        SavedRequests.save(activity, outState);
+      }
+
+      @Override
+      public void onActivityDestroyed(Activity activity) {
+        onOwnerDestroyed(activity, activity.isChangingConfigurations());
+      }
+    });
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * An index of permissions declared in the manifest of the app, built once from
+ * {@link android.content.pm.PackageInfo#requestedPermissions}.
+ *
+ * <p>A permission, that is not declared in the manifest, is always denied by the system,
+ * so it can be settled immediately, without any IPC or a permissions dialog.</p>
+ *
+ * <p>The manifest never changes while the process is alive, so the index is invalidated
+ * only by {@link Permissive#invalidatePermissionCache()}.
+ * Until it's loaded (or when it can't be loaded at all), every permission is treated as declared.
+ * Below M, it's loaded by the first permission check, see {@link PermissionStateCache}.</p>
+ */
+final class ManifestIndex {
+  private static final String TAG = ManifestIndex.class.getSimpleName();
+
+  /* declared permissions, or null when not loaded yet */
+  private volatile PermissionSet declared;
+  private volatile boolean unavailable;
+
+  /**
+   * @return {@code true} if the index is loaded, or it can't be loaded at all.
+   */
+  boolean isLoaded() {
+    return declared != null || unavailable;
+  }
+
+  /**
+   * @return Permissions declared in the manifest, or {@code null} if the index is not loaded.
+   */
+  PermissionSet getDeclared() {
+    return declared;
+  }
+
+  /**
+   * Updates the index with permissions requested in the manifest.
+   */
+  void update(String[] requestedPermissions) {
+    if (declared == null && !unavailable) {
+      declared = requestedPermissions != null ? PermissionSet.of(requestedPermissions) : PermissionSet.EMPTY;
+    }
+  }
+
+  /**
+   * Forgets the loaded index, so it's loaded again on the next request.
+   */
+  void reset() {
+    declared = null;
+    unavailable = false;
+  }
+
+  /**
+   * Marks the index as unavailable, so it doesn't try to load it again.
+   */
+  void markUnavailable() {
+    unavailable = true;
+  }
+
+  /**
+   * Checks, whether the permission is known to be missing in the manifest.
+   * It never loads the index, so it's safe to call it from any place.
+   *
+   * @param permission A permission.
+   * @return {@code true} if the index is loaded, and the permission is not declared.
+   */
+  boolean isUndeclared(String permission) {
+    final PermissionSet set = declared;
+    return set != null && !set.contains(permission);
+  }
+
+  /**
+   * Filters out permissions, that are not declared in the manifest. The index is loaded when needed.
+   *
+   * @param context A context used to load the index.
+   * @param permissions Permissions to be filtered.
+   * @return The same array if all permissions are declared, otherwise a new one.
+   */
+  String[] filterDeclared(Context context, String[] permissions) {
+    PermissionSet set = declared;
+    if (!isLoaded()) {
+      Permissive.permissionCache.refreshAll(context);
+      set = declared;
+    }
+    if (set == null) {
+      return permissions;
+    }
+    int count = 0;
+    for (String permission : permissions) {
+      if (set.contains(permission)) {
+        ++count;
+      }
+    }
+    if (count == permissions.length) {
+      return permissions;
+    }
+    final String[] filtered = new String[count];
+    int j = 0;
+    for (String permission : permissions) {
+      if (set.contains(permission)) {
+        filtered[j++] = permission;
+      } else {
+        Log.w(TAG, "Permission is not declared in the manifest, so it's always denied: " + permission);
+      }
+    }
+    return filtered;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A process-wide index of permission groups, built on demand from {@link PackageManager}.
+ *
+ * <p>Android grants dangerous permissions by group: when any permission of a group is granted,
+ * then other permissions of the same group are granted without asking the user.
+ * The index allows to predict it, so useless rationales are not displayed,
+ * and such requests can share a single dialog.</p>
+ *
+ * <p>Permission groups never change while the process is alive, so each permission and group
+ * is queried only once. Since Android 10 (API-29) platform permissions report an undefined group,
+ * and then no predictions are made.</p>
+ */
+final class PermissionGroupIndex {
+
+  /* a group reported by platform permissions since Android 10 */
+  private static final String UNDEFINED_GROUP = "android.permission-group.UNDEFINED";
+
+  private static final class Entry {
+    static final Entry NONE = new Entry(null, false);
+
+    /* null when the permission doesn't belong to any group */
+    final String group;
+    final boolean dangerous;
+
+    Entry(String group, boolean dangerous) {
+      this.group = group;
+      this.dangerous = dangerous;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Entry> permissions = new ConcurrentHashMap<>();
+  /* dangerous permissions of each group */
+  private final ConcurrentHashMap<String, String[]> groups = new ConcurrentHashMap<>();
+
+  /**
+   * @param context A context used to query the package manager.
+   * @param permission A permission.
+   * @return A group of the permission, or {@code null} if it doesn't belong to any group.
+   */
+  String groupOf(Context context, String permission) {
+    return entryOf(context, permission).group;
+  }
+
+  /**
+   * Checks, whether the permission would be granted without any dialog,
+   * because other dangerous permission of its group is already granted.
+   *
+   * @param context A context used to check permissions.
+   * @param permission A refused permission.
+   * @return {@code true} if the permission would be granted automatically.
+   */
+  boolean isGrantedByGroup(Context context, String permission) {
+    final Entry entry = entryOf(context, permission);
+    if (entry.group == null || !entry.dangerous) {
+      return false;
+    }
+    for (String sibling : membersOf(context, entry.group)) {
+      if (!sibling.equals(permission)
+          && Permissive.checkPermissionInt(context, sibling) == PackageManager.PERMISSION_GRANTED) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return {@code true} if all refused permissions would be granted without any dialog.
+   */
+  boolean areGrantedByGroup(Context context, String[] refusedPermissions) {
+    for (String permission : refusedPermissions) {
+      if (!isGrantedByGroup(context, permission)) {
+        return false;
+      }
+    }
+    return refusedPermissions.length > 0;
+  }
+
+  /**
+   * Orders permissions, so permissions of the same group are next to each other.
+   * The order of groups and of permissions within each group is preserved.
+   *
+   * @param context A context used to query the package manager.
+   * @param permissions Permissions to be ordered.
+   * @return The same array if it's already ordered, otherwise a new one.
+   */
+  String[] groupSiblings(Context context, String[] permissions) {
+    if (permissions.length < 3) {
+      return permissions;
+    }
+    final String[] groupOf = new String[permissions.length];
+    for (int i = 0; i < permissions.length; ++i) {
+      groupOf[i] = groupOf(context, permissions[i]);
+    }
+    final String[] ordered = new String[permissions.length];
+    final boolean[] taken = new boolean[permissions.length];
+    boolean changed = false;
+    int count = 0;
+    for (int i = 0; i < permissions.length; ++i) {
+      if (taken[i]) {
+        continue;
+      }
+      ordered[count++] = permissions[i];
+      if (groupOf[i] == null) {
+        continue;
+      }
+      for (int j = i + 1; j < permissions.length; ++j) {
+        if (!taken[j] && groupOf[i].equals(groupOf[j])) {
+          taken[j] = true;
+          changed |= j != count;
+          ordered[count++] = permissions[j];
+        }
+      }
+    }
+    return changed ? ordered : permissions;
+  }
+
+  /**
+   * Loads groups of given permissions and members of these groups, so later lookups don't need any IPC.
+   */
+  void prefetch(Context context, String[] permissions) {
+    for (String permission : permissions) {
+      final Entry entry = entryOf(context, permission);
+      if (entry.group != null && entry.dangerous) {
+        membersOf(context, entry.group);
+      }
+    }
+  }
+
+  private Entry entryOf(Context context, String permission) {
+    Entry entry = permissions.get(permission);
+    if (entry == null) {
+      entry = Entry.NONE;
+      final PackageManager pm = context.getPackageManager();
+      if (pm != null) {
+        try {
+          final PermissionInfo info = pm.getPermissionInfo(permission, 0);
+          if (info != null) {
+            entry = new Entry(UNDEFINED_GROUP.equals(info.group) ? null : info.group, isDangerous(info));
+          }
+        } catch (PackageManager.NameNotFoundException e) {
+          // an unknown permission, so it has no group
+        }
+      }
+      permissions.put(permission, entry);
+    }
+    return entry;
+  }
+
+  private String[] membersOf(Context context, String group) {
+    String[] members = groups.get(group);
+    if (members == null) {
+      members = new String[0];
+      final PackageManager pm = context.getPackageManager();
+      if (pm != null) {
+        try {
+          final List<PermissionInfo> infos = pm.queryPermissionsByGroup(group, 0);
+          if (infos != null) {
+            int count = 0;
+            for (PermissionInfo info : infos) {
+              if (isDangerous(info)) {
+                ++count;
+              }
+            }
+            members = new String[count];
+            int i = 0;
+            for (PermissionInfo info : infos) {
+              if (isDangerous(info)) {
+                members[i++] = info.name;
+                permissions.putIfAbsent(info.name, new Entry(group, true));
+              }
+            }
+          }
+        } catch (PackageManager.NameNotFoundException e) {
+          // an unknown group, so it has no members
+        }
+      }
+      groups.put(group, members);
+    }
+    return members;
+  }
+
+  private static boolean isDangerous(PermissionInfo info) {
+    return (info.protectionLevel & PermissionInfo.PROTECTION_MASK_BASE) == PermissionInfo.PROTECTION_DANGEROUS;
+  }
+}
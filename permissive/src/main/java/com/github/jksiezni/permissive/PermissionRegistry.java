@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A process-wide registry, that interns permission names as small integer ids.
+ *
+ * <p>Ids are assigned in order of registration, starting from {@code 0}, and never change
+ * during the lifetime of the process. Lookups are lock-free.</p>
+ *
+ * <p>Permission names may come from callers, so the registry is capped at {@link #MAX_SIZE} entries.
+ * Permissions seen after that are not interned at all.</p>
+ *
+ * @see PermissionSet
+ */
+final class PermissionRegistry {
+
+  /* far more than the platform defines, so only bogus or generated names are not interned */
+  static final int MAX_SIZE = 1024;
+
+  private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  private static volatile String[] names = new String[32];
+
+  private PermissionRegistry() { /* never instantiated */ }
+
+  /**
+   * Returns an id of the permission, registering the permission when it's seen for the first time.
+   *
+   * @param permission A permission name. Can't be {@code null}.
+   * @return The id of the permission, or {@code -1} when the registry is full.
+   */
+  static int idOf(String permission) {
+    if (permission == null) {
+      throw new IllegalArgumentException("permission is null");
+    }
+    final Integer id = ids.get(permission);
+    if (id != null) {
+      return id;
+    }
+    return register(permission);
+  }
+
+  /**
+   * Returns an id of already registered permission.
+   *
+   * @param permission A permission name.
+   * @return The id of the permission, or {@code -1} when it's not registered.
+   */
+  static int peekId(String permission) {
+    final Integer id = permission != null ? ids.get(permission) : null;
+    return id != null ? id : -1;
+  }
+
+  /**
+   * @param id An id of registered permission.
+   * @return A permission name.
+   */
+  static String nameOf(int id) {
+    return names[id];
+  }
+
+  /**
+   * @return A number of registered permissions.
+   */
+  static int size() {
+    return ids.size();
+  }
+
+  private static synchronized int register(String permission) {
+    final Integer existing = ids.get(permission);
+    if (existing != null) {
+      return existing;
+    }
+    final int id = ids.size();
+    if (id >= MAX_SIZE) {
+      return -1;
+    }
+    String[] current = names;
+    if (id >= current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    current[id] = permission;
+    // publish the name before the id becomes visible
+    names = current;
+    ids.put(permission, id);
+    return id;
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of permissions backed by a bitset.
+ *
+ * <p>Each permission is interned as a small integer id, so set operations like
+ * {@link #union(PermissionSet)}, {@link #intersect(PermissionSet)} or {@link #minus(PermissionSet)}
+ * are reduced to a few word operations. Iteration doesn't allocate:</p>
+ *
+ * <pre>
+ * for (int id = set.nextId(0); id &gt;= 0; id = set.nextId(id + 1)) {
+ *   String permission = PermissionSet.nameOf(id);
+ * }
+ * </pre>
+ *
+ * <p>When {@link PermissionRegistry} is full, then new permissions are kept by name in a small sorted array.
+ * Such permissions are not visited by {@link #nextId(int)}, but all other operations handle them.</p>
+ */
+final class PermissionSet {
+
+  /**
+   * An empty set.
+   */
+  static final PermissionSet EMPTY = new PermissionSet(new long[0], null);
+
+  private static final String[] NO_NAMES = new String[0];
+
+  private final long[] words;
+  /* sorted names of permissions, that couldn't be interned, or null */
+  private final String[] uninterned;
+
+  private PermissionSet(long[] words, String[] uninterned) {
+    this.words = words;
+    this.uninterned = uninterned != null && uninterned.length > 0 ? uninterned : null;
+  }
+
+  /**
+   * Creates a set with given permissions.
+   *
+   * @param permissions Permissions to be added. Can't contain {@code null} elements.
+   * @return A new set.
+   */
+  static PermissionSet of(String... permissions) {
+    if (permissions == null || permissions.length == 0) {
+      return EMPTY;
+    }
+    long[] words = new long[0];
+    String[] uninterned = null;
+    for (String permission : permissions) {
+      final int id = PermissionRegistry.idOf(permission);
+      if (id < 0) {
+        uninterned = union(uninterned, new String[]{permission});
+        continue;
+      }
+      final int index = id >>> 6;
+      if (index >= words.length) {
+        words = Arrays.copyOf(words, index + 1);
+      }
+      words[index] |= 1L << id;
+    }
+    return new PermissionSet(words, uninterned);
+  }
+
+  /**
+   * Returns a permission name for the id obtained from {@link #nextId(int)}.
+   *
+   * @param id An id of the permission.
+   * @return The permission name.
+   */
+  static String nameOf(int id) {
+    return PermissionRegistry.nameOf(id);
+  }
+
+  /**
+   * @param permission A permission to be checked.
+   * @return {@code true} when the permission belongs to this set.
+   */
+  boolean contains(String permission) {
+    final int id = PermissionRegistry.peekId(permission);
+    if (id >= 0) {
+      return containsId(id);
+    }
+    return uninterned != null && permission != null && Arrays.binarySearch(uninterned, permission) >= 0;
+  }
+
+  /**
+   * @param id An id of the permission.
+   * @return {@code true} when the permission with given id belongs to this set.
+   */
+  boolean containsId(int id) {
+    final int index = id >>> 6;
+    return index < words.length && (words[index] & (1L << id)) != 0;
+  }
+
+  /**
+   * @param other Another set.
+   * @return {@code true} when all permissions from the other set belong to this set.
+   */
+  boolean containsAll(PermissionSet other) {
+    for (int i = 0; i < other.words.length; ++i) {
+      final long word = i < words.length ? words[i] : 0;
+      if ((other.words[i] & ~word) != 0) {
+        return false;
+      }
+    }
+    return other.uninterned == null || minus(other.uninterned, uninterned) == null;
+  }
+
+  /* Bits of permissions with ids below 64. */
+  long firstWord() {
+    return words.length > 0 ? words[0] : 0;
+  }
+
+  /**
+   * @return A number of permissions in this set.
+   */
+  int size() {
+    int count = uninterned != null ? uninterned.length : 0;
+    for (long word : words) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * @return {@code true} when the set has no permissions.
+   */
+  boolean isEmpty() {
+    if (uninterned != null) {
+      return false;
+    }
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Finds the next interned permission in this set.
+   *
+   * @param fromId An id to start searching from (inclusive).
+   * @return An id of the next permission, or {@code -1} when there are no more permissions.
+   */
+  int nextId(int fromId) {
+    int index = fromId >>> 6;
+    if (index >= words.length) {
+      return -1;
+    }
+    long word = words[index] & (-1L << fromId);
+    while (true) {
+      if (word != 0) {
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++index == words.length) {
+        return -1;
+      }
+      word = words[index];
+    }
+  }
+
+  /**
+   * @param other Another set.
+   * @return A set with permissions from both sets.
+   */
+  PermissionSet union(PermissionSet other) {
+    final long[] longer = words.length >= other.words.length ? words : other.words;
+    final long[] shorter = longer == words ? other.words : words;
+    final long[] result = longer.clone();
+    for (int i = 0; i < shorter.length; ++i) {
+      result[i] |= shorter[i];
+    }
+    return new PermissionSet(result, union(uninterned, other.uninterned));
+  }
+
+  /**
+   * @param other Another set.
+   * @return A set with permissions, that belong to both sets.
+   */
+  PermissionSet intersect(PermissionSet other) {
+    final long[] result = new long[Math.min(words.length, other.words.length)];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = words[i] & other.words[i];
+    }
+    return new PermissionSet(result, other.uninterned != null ? minus(uninterned, minus(uninterned, other.uninterned)) : null);
+  }
+
+  /**
+   * @param other Another set.
+   * @return A set with permissions from this set, that don't belong to the other set.
+   */
+  PermissionSet minus(PermissionSet other) {
+    final long[] result = words.clone();
+    final int count = Math.min(result.length, other.words.length);
+    for (int i = 0; i < count; ++i) {
+      result[i] &= ~other.words[i];
+    }
+    return new PermissionSet(result, minus(uninterned, other.uninterned));
+  }
+
+  /**
+   * @return An array with all permissions from this set, ordered by their ids.
+   * Permissions, that are not interned, are at the end.
+   */
+  String[] toArray() {
+    final String[] array = new String[size()];
+    int i = 0;
+    for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+      array[i++] = PermissionRegistry.nameOf(id);
+    }
+    if (uninterned != null) {
+      System.arraycopy(uninterned, 0, array, i, uninterned.length);
+    }
+    return array;
+  }
+
+  /**
+   * Filters given permissions, preserving their order.
+   *
+   * @param permissions Permissions to be filtered.
+   * @return An array with those of given permissions, that belong to this set.
+   */
+  String[] filter(String[] permissions) {
+    int count = 0;
+    for (String permission : permissions) {
+      if (contains(permission)) {
+        ++count;
+      }
+    }
+    if (count == permissions.length) {
+      return permissions.clone();
+    }
+    final String[] filtered = new String[count];
+    int i = 0;
+    for (String permission : permissions) {
+      if (contains(permission)) {
+        filtered[i++] = permission;
+      }
+    }
+    return filtered;
+  }
+
+  /**
+   * @return A sorted union of two sorted arrays, or {@code null} when it's empty.
+   */
+  private static String[] union(String[] a, String[] b) {
+    if (a == null) {
+      return b;
+    }
+    if (b == null) {
+      return a;
+    }
+    final String[] extra = minus(b, a);
+    if (extra == null) {
+      return a;
+    }
+    final String[] result = Arrays.copyOf(a, a.length + extra.length);
+    System.arraycopy(extra, 0, result, a.length, extra.length);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * @return Elements of the sorted array {@code a}, that don't belong to {@code b},
+   * or {@code null} when there are none.
+   */
+  private static String[] minus(String[] a, String[] b) {
+    if (a == null || b == null) {
+      return a;
+    }
+    int count = 0;
+    final String[] result = new String[a.length];
+    for (String name : a) {
+      if (Arrays.binarySearch(b, name) < 0) {
+        result[count++] = name;
+      }
+    }
+    return count == 0 ? null : count == a.length ? a : Arrays.copyOf(result, count);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PermissionSet)) {
+      return false;
+    }
+    final PermissionSet other = (PermissionSet) o;
+    final int count = Math.max(words.length, other.words.length);
+    for (int i = 0; i < count; ++i) {
+      final long a = i < words.length ? words[i] : 0;
+      final long b = i < other.words.length ? other.words[i] : 0;
+      if (a != b) {
+        return false;
+      }
+    }
+    return Arrays.equals(uninterned != null ? uninterned : NO_NAMES,
+        other.uninterned != null ? other.uninterned : NO_NAMES);
+  }
+
+  @Override
+  public int hashCode() {
+    long h = 1234;
+    for (int i = words.length; --i >= 0; ) {
+      h ^= words[i] * (i + 1);
+    }
+    return (int) ((h >> 32) ^ h) + (uninterned != null ? Arrays.hashCode(uninterned) : 0);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
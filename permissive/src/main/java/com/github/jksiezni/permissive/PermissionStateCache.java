@@ -0,0 +1,263 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A process-wide cache of permission grant states.
+ *
+ * <p>The cache is filled on demand, updated with results delivered by {@link PermissiveFragment}
+ * and invalidated every time an Activity is resumed, so permissions granted in system Settings
+ * are picked up. Revoking a permission kills the process, so a cached grant never outlives it.
+ * Right after invalidation, {@link PermissionStateObserver} looks for changes.</p>
+ *
+ * <p>When several permissions are checked at once, then grant states of all permissions declared
+ * in the manifest are fetched with a single {@link PackageManager#getPackageInfo(String, int)} call.
+ * Permissions missing in the manifest are reported as denied without asking the system.
+ * Below {@link Build.VERSION_CODES#M}, the manifest is loaded before the first single check too,
+ * because then it's the main reason for a denied permission. Before {@link Build.VERSION_CODES#JELLY_BEAN},
+ * grant states are not available in bulk, so declared permissions are still checked one by one.</p>
+ *
+ * <p>Reads are lock-free and can be performed from any thread.</p>
+ */
+final class PermissionStateCache {
+
+  private final ConcurrentHashMap<String, Integer> states = new ConcurrentHashMap<>();
+  private final AtomicInteger generation = new AtomicInteger();
+
+  private volatile boolean lifecycleRegistered;
+
+  /**
+   * Returns a cached grant state of the permission, or asks the system when it's not cached yet.
+   *
+   * @param context A context used to check the permission.
+   * @param permission A permission to be checked.
+   * @return One of {@link android.content.pm.PackageManager#PERMISSION_GRANTED} or
+   * {@link android.content.pm.PackageManager#PERMISSION_DENIED}.
+   */
+  int checkPermission(Context context, String permission) {
+    final Integer state = states.get(permission);
+    if (state != null) {
+      return state;
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M && !Permissive.manifest.isLoaded()) {
+      // below M only undeclared permissions are denied, so load the manifest before asking the system
+      refreshAll(context);
+      final Integer fetched = states.get(permission);
+      if (fetched != null) {
+        return fetched;
+      }
+    }
+    if (Permissive.manifest.isUndeclared(permission)) {
+      // permissions missing in the manifest are always denied
+      return PackageManager.PERMISSION_DENIED;
+    }
+    registerLifecycleCallbacks(context);
+    final int gen = generation.get();
+    final int result = context.checkPermission(permission, Process.myPid(), Process.myUid());
+    states.put(permission, result);
+    if (gen != generation.get()) {
+      // invalidated while checking, so the result may be already stale
+      states.remove(permission);
+    }
+    return result;
+  }
+
+  /**
+   * Returns grant states of all given permissions.
+   * Missing states are fetched in bulk, so usually it costs a single IPC at most.
+   *
+   * @param context A context used to check permissions.
+   * @param permissions Permissions to be checked.
+   * @return An array of grant states, in the same order as given permissions.
+   */
+  int[] checkPermissions(Context context, String[] permissions) {
+    final int[] grantResults = new int[permissions.length];
+    boolean refreshed = false;
+    for (int i = 0; i < permissions.length; ++i) {
+      if (!refreshed && isMissing(permissions[i])) {
+        refreshed = true;
+        refreshAll(context);
+      }
+      grantResults[i] = Permissive.checkPermissionInt(context, permissions[i]);
+    }
+    return grantResults;
+  }
+
+  /**
+   * Returns grant states of all given permissions as a vector with one bit per permission,
+   * which is set when the permission is granted. Missing states are fetched in bulk.
+   *
+   * @param context A context used to check permissions.
+   * @param permissions Permissions to be checked.
+   * @return A grant vector, in the same order as given permissions.
+   */
+  long[] checkGrantVector(Context context, String[] permissions) {
+    final long[] grants = new long[(permissions.length + 63) >>> 6];
+    boolean refreshed = false;
+    for (int i = 0; i < permissions.length; ++i) {
+      if (!refreshed && isMissing(permissions[i])) {
+        refreshed = true;
+        refreshAll(context);
+      }
+      if (Permissive.checkPermissionInt(context, permissions[i]) == PackageManager.PERMISSION_GRANTED) {
+        grants[i >>> 6] |= 1L << i;
+      }
+    }
+    return grants;
+  }
+
+  /**
+   * @return {@code true} when a state of the permission has to be fetched. Undeclared permissions
+   * are denied without asking the system, so they never trigger a refresh.
+   */
+  private boolean isMissing(String permission) {
+    return permission != null && !states.containsKey(permission) && !Permissive.manifest.isUndeclared(permission);
+  }
+
+  /**
+   * Fetches grant states of all permissions requested in the manifest with a single IPC.
+   * It also loads the {@link ManifestIndex}, if it's not loaded yet.
+   *
+   * @param context A context of the app.
+   * @return {@code true} when states were fetched, otherwise {@code false}.
+   */
+  boolean refreshAll(Context context) {
+    final boolean withStates = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    if (!withStates && Permissive.manifest.isLoaded()) {
+      return false;
+    }
+    final PackageManager pm = context.getPackageManager();
+    if (pm == null) {
+      Permissive.manifest.markUnavailable();
+      return false;
+    }
+    registerLifecycleCallbacks(context);
+    final int gen = generation.get();
+    final PackageInfo packageInfo;
+    try {
+      packageInfo = pm.getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+    } catch (PackageManager.NameNotFoundException e) {
+      Permissive.manifest.markUnavailable();
+      return false;
+    }
+    if (packageInfo == null) {
+      Permissive.manifest.markUnavailable();
+      return false;
+    }
+    Permissive.manifest.update(packageInfo.requestedPermissions);
+    if (!withStates || packageInfo.requestedPermissions == null || packageInfo.requestedPermissionsFlags == null) {
+      return false;
+    }
+    final Map<String, Integer> fetched = new HashMap<>(packageInfo.requestedPermissions.length);
+    for (int i = 0; i < packageInfo.requestedPermissions.length; ++i) {
+      fetched.put(packageInfo.requestedPermissions[i],
+          (packageInfo.requestedPermissionsFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0
+              ? PackageManager.PERMISSION_GRANTED
+              : PackageManager.PERMISSION_DENIED);
+    }
+    if (gen == generation.get()) {
+      states.putAll(fetched);
+    }
+    return true;
+  }
+
+  /**
+   * Updates the cache with results of a permissions request.
+   */
+  void update(String[] permissions, int[] grantResults) {
+    if (permissions == null || grantResults == null) {
+      return;
+    }
+    final int count = Math.min(permissions.length, grantResults.length);
+    for (int i = 0; i < count; ++i) {
+      states.put(permissions[i], grantResults[i]);
+    }
+  }
+
+  /**
+   * Drops all cached states.
+   */
+  void invalidate() {
+    generation.incrementAndGet();
+    states.clear();
+  }
+
+  void registerLifecycleCallbacks(Context context) {
+    if (lifecycleRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+      return;
+    }
+    final Context appContext = context.getApplicationContext();
+    if (appContext instanceof Application) {
+      synchronized (this) {
+        if (!lifecycleRegistered) {
+          lifecycleRegistered = true;
+          registerInvalidator((Application) appContext);
+        }
+      }
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  private void registerInvalidator(Application application) {
+    application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+      @Override
+      public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+      }
+
+      @Override
+      public void onActivityStarted(Activity activity) {
+      }
+
+      @Override
+      public void onActivityResumed(Activity activity) {
+        invalidate();
+        Permissive.stateObserver.checkForChanges(activity);
+      }
+
+      @Override
+      public void onActivityPaused(Activity activity) {
+      }
+
+      @Override
+      public void onActivityStopped(Activity activity) {
+      }
+
+      @Override
+      public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+      }
+
+      @Override
+      public void onActivityDestroyed(Activity activity) {
+      }
+    });
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes changes of permission grant states, for example permissions granted in system Settings.
+ *
+ * <p>Grant states of all observed permissions are checked once every time an Activity is resumed,
+ * together with invalidation of the permission cache, and when a listener subscribes.
+ * They are compared with the previous snapshot.
+ * So a single check is shared by all subscribers, instead of polling
+ * {@link Permissive#filterPermissions(Context, String[], int)} on every screen.</p>
+ *
+ * <p>Notifications are coalesced: when states change again before a subscriber is notified,
+ * it receives a single notification with the net difference only.</p>
+ *
+ * @see Permissive#getPermissionStateObserver()
+ */
+public final class PermissionStateObserver {
+
+  /**
+   * A listener of permission state changes.
+   */
+  public interface Listener {
+
+    /**
+     * Called when some of observed permissions have changed their state since the last notification.
+     *
+     * @param granted Permissions, that have been granted.
+     * @param revoked Permissions, that have been revoked.
+     */
+    void onPermissionStateChanged(String[] granted, String[] revoked);
+  }
+
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  private final Executor mainExecutor = new Executor() {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+      handler.post(command);
+    }
+  };
+
+  /* all observed permissions */
+  private PermissionSet observed = PermissionSet.EMPTY;
+  /* observed permissions, that were granted at the last check */
+  private volatile PermissionSet snapshot = PermissionSet.EMPTY;
+
+  PermissionStateObserver() {
+  }
+
+  /**
+   * Subscribes for changes of given permissions. The listener is notified on the main thread.
+   *
+   * @param context A context used to check the current state of permissions.
+   * @param listener A listener object. Keep it's reference somewhere, otherwise it will be GCed.
+   * @param permissions Permissions to be observed.
+   */
+  public void subscribe(Context context, Listener listener, String... permissions) {
+    subscribe(context, listener, mainExecutor, permissions);
+  }
+
+  /**
+   * Subscribes for changes of given permissions.
+   *
+   * @param context A context used to check the current state of permissions.
+   * @param listener A listener object. Keep it's reference somewhere, otherwise it will be GCed.
+   * @param executor An executor used to notify the listener.
+   * @param permissions Permissions to be observed.
+   */
+  public void subscribe(Context context, Listener listener, Executor executor, String... permissions) {
+    if (context == null) {
+      throw new IllegalArgumentException("context is null");
+    }
+    if (listener == null) {
+      throw new IllegalArgumentException("listener is null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor is null");
+    }
+    final PermissionSet permissionSet = PermissionSet.of(permissions);
+    final boolean changed;
+    synchronized (this) {
+      observed = observed.union(permissionSet);
+      // the snapshot is not refreshed without subscribers, and states may change between resumes,
+      // so it's refreshed here, otherwise the first check would publish a change, that happened before
+      final PermissionSet granted = checkGranted(context, observed.toArray());
+      changed = !granted.equals(snapshot);
+      snapshot = granted;
+      // added under the lock, so a concurrent check either sees the subscriber, or is seen in its initial state
+      subscribers.add(new Subscriber(listener, executor, permissionSet, granted.intersect(permissionSet)));
+    }
+    if (changed) {
+      scheduleAll();
+    }
+  }
+
+  /**
+   * Removes all subscriptions of the listener.
+   *
+   * @param listener A listener to be removed.
+   */
+  public void unsubscribe(Listener listener) {
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.listenerRef.get() == listener) {
+        subscribers.remove(subscriber);
+      }
+    }
+  }
+
+  /**
+   * Checks observed permissions, and notifies subscribers when any of them has changed.
+   * Called when an Activity is resumed, after the permission cache is invalidated.
+   */
+  void checkForChanges(Context context) {
+    if (subscribers.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      final PermissionSet granted = checkGranted(context, observed.toArray());
+      if (granted.equals(snapshot)) {
+        return;
+      }
+      snapshot = granted;
+    }
+    scheduleAll();
+  }
+
+  private void scheduleAll() {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.schedule();
+    }
+  }
+
+  private static PermissionSet checkGranted(Context context, String[] permissions) {
+    final int[] grants = Permissive.permissionCache.checkPermissions(context, permissions);
+    int count = 0;
+    for (int grant : grants) {
+      if (grant == PackageManager.PERMISSION_GRANTED) {
+        ++count;
+      }
+    }
+    final String[] granted = new String[count];
+    for (int i = 0, j = 0; i < permissions.length; ++i) {
+      if (grants[i] == PackageManager.PERMISSION_GRANTED) {
+        granted[j++] = permissions[i];
+      }
+    }
+    return PermissionSet.of(granted);
+  }
+
+  private final class Subscriber implements Runnable {
+    final WeakReference<Listener> listenerRef;
+    final Executor executor;
+    final PermissionSet permissions;
+    final AtomicBoolean scheduled = new AtomicBoolean();
+    /* granted permissions, as last seen by the listener; guarded by the subscriber, because
+       an executor may run the next notification on another thread, before this one returns */
+    private PermissionSet delivered;
+
+    Subscriber(Listener listener, Executor executor, PermissionSet permissions, PermissionSet initial) {
+      this.listenerRef = new WeakReference<>(listener);
+      this.executor = executor;
+      this.permissions = permissions;
+      this.delivered = initial;
+    }
+
+    void schedule() {
+      // a notification that is already scheduled will pick up the latest snapshot
+      if (scheduled.compareAndSet(false, true)) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      scheduled.set(false);
+      final Listener listener = listenerRef.get();
+      if (listener == null) {
+        subscribers.remove(this);
+        return;
+      }
+      // notifications of the subscriber are delivered one at a time, in order of snapshots
+      synchronized (this) {
+        final PermissionSet current = snapshot.intersect(permissions);
+        final PermissionSet granted = current.minus(delivered);
+        final PermissionSet revoked = delivered.minus(current);
+        delivered = current;
+        if (!granted.isEmpty() || !revoked.isEmpty()) {
+          listener.onPermissionStateChanged(granted.toArray(), revoked.toArray());
+        }
+      }
+    }
+  }
+}
@@ -23,12 +23,12 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Process;
 
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The <b>Permissive</b> class provides core API methods to the whole library.
@@ -47,11 +47,86 @@ public final class Permissive {
    */
   public static final String PERMISSIVE_FRAGMENT_TAG = "com.github.jksiezni.permissive.request_fragment";
 
-  private static final PermissiveHandler permissiveHandler = new PermissiveHandler();
-  private static final Map<String, Rationale> globalRationaleMap = new HashMap<>();
+  static final PermissiveHandler permissiveHandler = new PermissiveHandler();
+  private static final RationaleRegistry globalRationales = new RationaleRegistry();
+  static final PermissionStateCache permissionCache = new PermissionStateCache();
+  static final PermissionGroupIndex permissionGroups = new PermissionGroupIndex();
+  static final ManifestIndex manifest = new ManifestIndex();
+  static final DenialTracker denials = new DenialTracker();
+  static volatile PermissiveMetrics metrics = PermissiveMetrics.NONE;
+  static volatile PermissiveTracer tracer = PermissiveTracer.NONE;
+  static final EventRecorder events = new EventRecorder(256);
+  static final PermissionStateObserver stateObserver = new PermissionStateObserver();
+  static final LifecycleScopes scopes = new LifecycleScopes();
+  private static final AtomicBoolean initialized = new AtomicBoolean();
 
   private Permissive() { /* never instantiated */ }
 
+  /**
+   * Initializes the library ahead of the first permission check. It's optional, but recommended.
+   *
+   * <p>Call it from {@link Application#onCreate()}. It registers activity lifecycle callbacks,
+   * and then loads grant states of all permissions declared in the manifest, their groups,
+   * global rationales and permanently denied permissions on a background thread, so the first {@link Action} is answered from memory.
+   * Register global rationales before calling it, to get them warmed up too.</p>
+   *
+   * <p>The callbacks also restore pending requests scoped with {@link Action#scopedTo(Activity, String)},
+   * when an Activity is recreated after the process was killed, and direct requests of a
+   * {@link PermissiveDispatcher.Host}.</p>
+   *
+   * <p>Subsequent calls have no effect.</p>
+   *
+   * @param application The application.
+   */
+  public static void init(final Application application) {
+    if (application == null) {
+      throw new IllegalArgumentException("application is null");
+    }
+    if (!initialized.compareAndSet(false, true)) {
+      return;
+    }
+    permissionCache.registerLifecycleCallbacks(application);
+    scopes.registerLifecycleCallbacks(application);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      PermissiveDispatcher.registerLifecycleCallbacks(application);
+    }
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        prefetch(application);
+      }
+    }, "Permissive-init");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Loads everything, that is needed to answer permission checks without any IPC.
+   *
+   * <p>It runs on a background thread, racing with the first checks on the main thread.
+   * Everything it writes is published safely: the manifest index and the rationales snapshot
+   * are held in volatile fields, and grant states, permission groups and denials in concurrent maps.
+   * Until an entry is published, a check simply loads it on its own.</p>
+   */
+  static void prefetch(Context context) {
+    tracer.beginSection("Permissive.prefetch");
+    try {
+      permissionCache.refreshAll(context);
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+        denials.load(context);
+      }
+      final PermissionSet declared = manifest.getDeclared();
+      if (declared != null && !declared.isEmpty()) {
+        final String[] permissions = declared.toArray();
+        permissionGroups.prefetch(context, permissions);
+        globalRationales.resolveAll(context, permissions);
+      }
+    } finally {
+      tracer.endSection();
+    }
+  }
+
   /**
    * Registers a global rationale for a given permission.
    *
@@ -67,28 +142,124 @@ public final class Permissive {
    * @param rationale A rationale that will be used
    */
   public static void registerGlobalRationale(String permission, Rationale rationale) {
-    synchronized (globalRationaleMap) {
-      globalRationaleMap.put(permission, rationale);
+    if (permission == null) {
+      throw new IllegalArgumentException("permission is null");
+    }
+    globalRationales.registerForPermission(permission, rationale);
+  }
+
+  /**
+   * Registers a global rationale for all permissions of a given permission group.
+   * A rationale registered for a single permission takes precedence.
+   *
+   * @param permissionGroup One of groups from {@link android.Manifest.permission_group}
+   * @param rationale A rationale that will be used, or {@code null} to remove it.
+   * @see #registerGlobalRationale(String, Rationale)
+   */
+  public static void registerGlobalRationaleForGroup(String permissionGroup, Rationale rationale) {
+    if (permissionGroup == null) {
+      throw new IllegalArgumentException("permissionGroup is null");
     }
+    globalRationales.registerForGroup(permissionGroup, rationale);
+  }
+
+  /**
+   * Registers a global rationale for all permissions, which names start with a given prefix,
+   * for example {@code "com.example.permission."}. When more prefixes match, then the longest one is used.
+   * Rationales registered for a single permission or a group take precedence.
+   *
+   * @param prefix A prefix of permission names.
+   * @param rationale A rationale that will be used, or {@code null} to remove it.
+   * @see #registerGlobalRationale(String, Rationale)
+   */
+  public static void registerGlobalRationaleForPrefix(String prefix, Rationale rationale) {
+    if (prefix == null) {
+      throw new IllegalArgumentException("prefix is null");
+    }
+    globalRationales.registerForPrefix(prefix, rationale);
   }
 
   private static boolean fireGlobalRationale(Activity activity, String[] permissions, PermissiveMessenger messenger) {
-    synchronized (globalRationaleMap) {
-      for (String permission : permissions) {
-        if (globalRationaleMap.containsKey(permission)) {
-          globalRationaleMap.get(permission).onShowRationale(activity, new String[]{permission}, messenger);
-          return true;
-        }
+    final Rationale[] rationales = globalRationales.resolveAll(activity, permissions);
+    for (int i = 0; i < permissions.length; ++i) {
+      if (rationales[i] != null) {
+        rationales[i].onShowRationale(activity, collectPermissionsFor(rationales[i], permissions, rationales, i), messenger);
+        return true;
       }
     }
     return false;
   }
 
+  /**
+   * @return Permissions starting from {@code first}, which share the same global rationale.
+   */
+  private static String[] collectPermissionsFor(Rationale rationale, String[] permissions, Rationale[] rationales, int first) {
+    int count = 0;
+    for (int i = first; i < permissions.length; ++i) {
+      if (rationales[i] == rationale) {
+        ++count;
+      }
+    }
+    final String[] shared = new String[count];
+    for (int i = first, j = 0; j < count; ++i) {
+      if (rationales[i] == rationale) {
+        shared[j++] = permissions[i];
+      }
+    }
+    return shared;
+  }
+
   static int checkPermissionInt(Context context, String permission) {
     if (permission == null) {
       throw new IllegalArgumentException("permission is null");
     }
-    return context.checkPermission(permission, Process.myPid(), Process.myUid());
+    return permissionCache.checkPermission(context, permission);
+  }
+
+  /**
+   * Drops all cached permission states and the index of permissions declared in the manifest,
+   * so the next check asks the system again.
+   *
+   * <p>Normally, it's not needed, because the cache is invalidated every time an Activity is resumed.
+   * It may be useful when permissions are changed in other way, for example in tests.</p>
+   */
+  public static void invalidatePermissionCache() {
+    permissionCache.invalidate();
+    manifest.reset();
+  }
+
+  /**
+   * Reattaches a listener to an action scoped with {@link Action#scopedTo(Activity, String)},
+   * after its owner was recreated. When the result has already arrived, then it's delivered immediately.
+   *
+   * <p>Call it from {@code onCreate()} of the recreated Activity.</p>
+   *
+   * @param owner The recreated Activity. It must be of the same class as the original owner.
+   * @param key A key given to {@link Action#scopedTo(Activity, String)}.
+   * @param listener A listener, which is held strongly until the action completes or the owner is destroyed.
+   * @return {@code true} if a detached action was found, otherwise {@code false}.
+   */
+  public static boolean reattachListener(Activity owner, String key, PermissionsResultListener listener) {
+    if (owner == null) {
+      throw new IllegalArgumentException("owner is null");
+    }
+    if (key == null) {
+      throw new IllegalArgumentException("key is null");
+    }
+    if (listener == null) {
+      throw new IllegalArgumentException("listener is null");
+    }
+    return scopes.reattach(owner, key, listener);
+  }
+
+  /**
+   * Returns an observer, which publishes changes of permission states detected when an Activity is resumed.
+   * Use it instead of checking permissions in every {@code onResume()}.
+   *
+   * @return A process-wide observer of permission states.
+   */
+  public static PermissionStateObserver getPermissionStateObserver() {
+    return stateObserver;
   }
 
   /**
@@ -96,6 +267,8 @@ public final class Permissive {
    * This method is similar to {@link Context#checkSelfPermission(String)},
    * but returns a boolean value instead of integer value.
    *
+   * <p>Results are cached in memory, so repeated checks are cheap and safe to call from any thread.</p>
+   *
    * @param context Provide a context. Can't be {@code null}.
    * @param permission A permission that should be checked. Can't be {@code null}.
    * @return {@code true} when permission is granted, otherwise {@code false}.
@@ -113,13 +286,20 @@ public final class Permissive {
    * @return Permissions that match the given filter flag.
    */
   public static String[] filterPermissions(Context context, String[] permissions, int filter) {
-    final ArrayList<String> filtered = new ArrayList<>();
-    for (String permission : permissions) {
-      if (checkPermissionInt(context, permission) == filter) {
-        filtered.add(permission);
+    final int[] grantResults = permissionCache.checkPermissions(context, permissions);
+    int count = 0;
+    for (int grantResult : grantResults) {
+      if (grantResult == filter) {
+        ++count;
+      }
+    }
+    final String[] filtered = new String[count];
+    for (int i = 0, j = 0; j < count; ++i) {
+      if (grantResults[i] == filter) {
+        filtered[j++] = permissions[i];
       }
     }
-    return filtered.toArray(new String[filtered.size()]);
+    return filtered;
   }
 
   /**
@@ -129,44 +309,180 @@ public final class Permissive {
    */
   static String[] getPermissionsRequiringRationale(Activity activity, String[] permissions) {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-      final List<String> rationalePermissions = new ArrayList<>();
-      for (String permission : permissions) {
-        if (checkPermissionInt(activity, permission) == PackageManager.PERMISSION_DENIED
-            && activity.shouldShowRequestPermissionRationale(permission)) {
-          rationalePermissions.add(permission);
+      final int[] grantResults = permissionCache.checkPermissions(activity, permissions);
+      final boolean[] requiresRationale = new boolean[permissions.length];
+      int count = 0;
+      for (int i = 0; i < permissions.length; ++i) {
+        if (grantResults[i] == PackageManager.PERMISSION_DENIED
+            && activity.shouldShowRequestPermissionRationale(permissions[i])) {
+          requiresRationale[i] = true;
+          ++count;
         }
       }
-      return rationalePermissions.toArray(new String[rationalePermissions.size()]);
+      final String[] rationalePermissions = new String[count];
+      for (int i = 0, j = 0; j < count; ++i) {
+        if (requiresRationale[i]) {
+          rationalePermissions[j++] = permissions[i];
+        }
+      }
+      return rationalePermissions;
     }
     return new String[0];
   }
 
+  /**
+   * Sets a time window, in which executed {@link Request}s are collected before the first of them
+   * is processed. Pending requests for the same Activity are asked with a single permissions dialog,
+   * and the result is delivered to listeners of each request.
+   *
+   * <p>By default, the window is {@code 0}, so only requests, that are already waiting in the queue,
+   * are coalesced.</p>
+   *
+   * @param millis A time window in milliseconds.
+   */
+  public static void setRequestCoalescingWindow(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("millis < 0");
+    }
+    permissiveHandler.setCoalescingWindow(millis);
+  }
+
+  /**
+   * Enables a synchronous fast path for actions and requests, whose permissions are already granted.
+   *
+   * <p>When enabled and the queue is idle, then {@link Action#execute(Context)} checks permissions
+   * immediately and calls listeners on the calling thread, instead of enqueuing the action.
+   * Otherwise, when any permission is refused or other actions are pending, the action is enqueued
+   * as usual.</p>
+   *
+   * <p>The queue is owned by the main thread, so the fast path is taken only by actions executed
+   * on the main thread. Actions executed on other threads are always enqueued.</p>
+   *
+   * @param enable When {@code true}, granted actions are completed synchronously. Default is {@code false}.
+   */
+  public static void setSynchronousFastPath(boolean enable) {
+    permissiveHandler.setFastPathEnabled(enable);
+  }
+
+  /**
+   * Sets a default timeout for each stage of a {@link Request}, which waits for the user:
+   * a displayed rationale or a permissions dialog.
+   *
+   * <p>When a stage is not finished in time, for example a rationale never calls
+   * {@link PermissiveMessenger#repeatRequest()} or {@link PermissiveMessenger#cancelRequest()},
+   * then the request is canceled and refused permissions are delivered to its listeners.</p>
+   *
+   * @param millis A timeout in milliseconds, or {@code 0} to wait forever (default).
+   * @see Request#withTimeout(long)
+   */
+  public static void setDefaultRequestTimeout(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("millis < 0");
+    }
+    permissiveHandler.setDefaultTimeout(millis);
+  }
+
+  /**
+   * Registers a listener for metrics of permissions handling.
+   *
+   * @param listener A metrics listener, or {@code null} to disable metrics.
+   */
+  public static void setMetrics(PermissiveMetrics listener) {
+    metrics = listener != null ? listener : PermissiveMetrics.NONE;
+  }
+
+  /**
+   * Registers a tracer for state transitions of permissions handling.
+   *
+   * @param permissiveTracer A tracer, for example {@link PermissiveTracer#SYSTEM}, or {@code null} to disable tracing.
+   */
+  public static void setTracer(PermissiveTracer permissiveTracer) {
+    tracer = permissiveTracer != null ? permissiveTracer : PermissiveTracer.NONE;
+  }
+
+  /**
+   * Prints the recent history of permissions handling, for example to attach it to a bug report.
+   *
+   * <p>The history is kept in a small ring buffer, which is always enabled,
+   * also in release builds.</p>
+   *
+   * @param writer A writer for events.
+   */
+  public static void dumpEvents(PrintWriter writer) {
+    events.dump(writer);
+  }
+
   /**
    * Returns {@code true} when there are currently any pending actions or requests.
    *
+   * <p>It's safe to call from any thread. Off the main thread, it reflects the queue
+   * after the last processed message, so actions executed a moment ago may be missing.</p>
+   *
    * <p>Note: The method is temporary and can be deleted soon.
    */
   public static boolean hasPendingActions() {
     return permissiveHandler.hasPendingActions();
   }
 
+  /**
+   * Returns {@code true} when there are any pending actions or requests executed with the given context.
+   *
+   * <p>Actions and requests are queued separately for each Activity, and all actions executed with
+   * a non-Activity context share a single queue.</p>
+   *
+   * @param context A context used to execute actions.
+   * @see #hasPendingActions()
+   */
+  public static boolean hasPendingActions(Context context) {
+    return permissiveHandler.getPendingActionsCount(context) > 0;
+  }
+
+  /**
+   * Returns a number of pending actions and requests executed with the given context,
+   * including the one currently processed.
+   *
+   * @param context A context used to execute actions.
+   * @see #hasPendingActions()
+   */
+  public static int getPendingActionsCount(Context context) {
+    return permissiveHandler.getPendingActionsCount(context);
+  }
+
   /**
    * The Action class is designed to perform tasks when a given set of permissions are granted.
    * It does not requests any permissions from user, but only checks existing permissions status.
    *
    * <p>Each action is enqueued and executed on a main thread, so keep in mind to not add time
-   * consuming tasks, like accessing storage, networking, etc.</p>
+   * consuming tasks, like accessing storage, networking, etc. Alternatively, the action can be executed
+   * on a background thread with {@link #execute(Context, Executor)}.</p>
    *
    * @param <T> A type of {@link Context} in which an action will be executed.
    */
   public static class Action<T extends Context> {
 
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    /* A unique id of the action, used to identify it in recorded events. */
+    final int id = nextId.incrementAndGet();
     private final String[] permissions;
+    private final PermissionSet permissionSet;
     private WeakReference<PermissionsGrantedListener> permissionsGrantedRef;
     private WeakReference<PermissionsRefusedListener> permissionsRefusedRef;
     private WeakReference<PermissionsResultListener> permissionsResultRef;
 
     protected WeakReference<T> activityRef;
+    /* An executor used to check permissions and fire listeners, or null to use the main thread. */
+    Executor executor;
+    /* uptime when the action was added to the queue */
+    long enqueueTime;
+    /* a cookie of the asynchronous trace section, or 0 when not traced */
+    int traceCookie;
+    /* a future completed with the result, or null when the action was not executed asynchronously */
+    PermissiveFuture future;
+    /* a lifecycle scope holding listeners strongly, or null */
+    LifecycleScopes.Scope scope;
+    /* a listener held strongly by an execution of RequestTemplate, or null */
+    PermissionsResultListener heldResultListener;
 
     /**
      * Constructs a new Action.
@@ -174,7 +490,13 @@ public final class Permissive {
      * @param permissions  A list of permissions, that are required by the action.
      */
     public Action(String... permissions) {
+      this(permissions, PermissionSet.of(permissions));
+    }
+
+    /* Inner constructor used by templates, which precompute the set of permissions. */
+    Action(String[] permissions, PermissionSet permissionSet) {
       this.permissions = permissions;
+      this.permissionSet = permissionSet;
     }
 
     /**
@@ -186,6 +508,7 @@ public final class Permissive {
      */
     public Action<T> whenPermissionsGranted(PermissionsGrantedListener listener) {
       this.permissionsGrantedRef = new WeakReference<>(listener);
+      captureListeners();
       return this;
     }
 
@@ -198,6 +521,7 @@ public final class Permissive {
      */
     public Action<T> whenPermissionsRefused(PermissionsRefusedListener listener) {
       this.permissionsRefusedRef = new WeakReference<>(listener);
+      captureListeners();
       return this;
     }
 
@@ -210,9 +534,61 @@ public final class Permissive {
      */
     public Action<T> whenPermissionsResultReceived(PermissionsResultListener listener) {
       this.permissionsResultRef = new WeakReference<>(listener);
+      captureListeners();
       return this;
     }
 
+    /**
+     * Holds listeners of this Action strongly, until the Action completes or the owner is destroyed.
+     * Anonymous listeners can be used safely then.
+     *
+     * <p>When the owner is recreated after a configuration change, listeners are released, because they
+     * usually refer to the old instance. A new listener can be reattached with
+     * {@link Permissive#reattachListener(Activity, String, PermissionsResultListener)} and it receives
+     * the result, even if it arrived in the meantime.</p>
+     *
+     * <p>Listeners are released automatically on Android 4.0 (API-14) or newer.
+     * On older versions they are held until the Action completes.</p>
+     *
+     * <p>A pending {@link Request} is also saved in the instance state of the owner. When the process
+     * is killed, then the request is enqueued again with the restored owner, so a listener can be
+     * reattached with the same key. It requires {@link Permissive#init(Application)}.</p>
+     *
+     * @param owner An Activity, which owns listeners of this Action.
+     * @param key A key, which identifies this Action within the owner.
+     * @return {@code this} object, for method chaining.
+     */
+    public Action<T> scopedTo(Activity owner, String key) {
+      if (owner == null) {
+        throw new IllegalArgumentException("owner is null");
+      }
+      if (key == null) {
+        throw new IllegalArgumentException("key is null");
+      }
+      scope = scopes.attach(owner, key, this);
+      return this;
+    }
+
+    void captureListeners() {
+      final LifecycleScopes.Scope scope = this.scope;
+      if (scope != null) {
+        scope.capture();
+      }
+    }
+
+    Object[] getListeners() {
+      return new Object[]{
+          getPermissionsGrantedListener(), getPermissionsRefusedListener(), getPermissionsResultListener()
+      };
+    }
+
+    void clearListeners() {
+      permissionsGrantedRef = null;
+      permissionsRefusedRef = null;
+      permissionsResultRef = null;
+      heldResultListener = null;
+    }
+
     /**
      * Gets permissions that were provided during initialization.
      * @return An array of requested permissions.
@@ -221,6 +597,14 @@ public final class Permissive {
       return permissions;
     }
 
+    /**
+     * Gets permissions that were provided during initialization as a {@link PermissionSet}.
+     * @return A set of requested permissions.
+     */
+    PermissionSet getPermissionSet() {
+      return permissionSet;
+    }
+
     /**
      * Gets a context that was provided when this Action was executed.
      * @return The context.
@@ -238,6 +622,9 @@ public final class Permissive {
     }
 
     public PermissionsResultListener getPermissionsResultListener() {
+      if (heldResultListener != null) {
+        return heldResultListener;
+      }
       return permissionsResultRef != null ? permissionsResultRef.get() : null;
     }
 
@@ -247,6 +634,10 @@ public final class Permissive {
      * <p>Keep in mind, that if the context disappears (for example when an Activity is finished),
      * then the Action will not be executed.</p>
      *
+     * <p>When {@link Permissive#setSynchronousFastPath(boolean)} is enabled, all permissions
+     * are granted and this method is called on the main thread, then listeners may be called
+     * before this method returns.</p>
+     *
      * @param context  The context which is saved as weak reference.
      */
     public void execute(T context) {
@@ -254,7 +645,65 @@ public final class Permissive {
         throw new IllegalArgumentException("context is null");
       }
       activityRef = new WeakReference<>(context);
-      permissiveHandler.enqueueAction(this);
+      if (!permissiveHandler.executeImmediately(this)) {
+        permissiveHandler.enqueueAction(this);
+      }
+    }
+
+    /**
+     * Executes this Action with a given context, and calls listeners on the given executor.
+     *
+     * <p>Actions don't display any UI, so they don't need the main thread. Permissions are checked
+     * on the executor, and when all of them are granted (or can never be granted), the Action is
+     * completed there without touching the main thread. Such an Action is not ordered behind pending
+     * requests, because they can't change its result. Otherwise, the Action waits in the queue behind
+     * pending requests on the main thread, and then it's handed over to the executor again.</p>
+     *
+     * @param context  The context which is saved as weak reference.
+     * @param executor  The executor used to check permissions and call listeners.
+     */
+    public void execute(T context, Executor executor) {
+      if (context == null) {
+        throw new IllegalArgumentException("context is null");
+      }
+      if (executor == null) {
+        throw new IllegalArgumentException("executor is null");
+      }
+      activityRef = new WeakReference<>(context);
+      this.executor = executor;
+      permissiveHandler.executeOnExecutor(this);
+    }
+
+    /**
+     * Executes this Action with a given context, and returns a future result.
+     * The future is completed on the main thread, possibly before this method returns,
+     * when {@link Permissive#setSynchronousFastPath(boolean)} is enabled.
+     *
+     * <p>The future is strongly referenced, so registering listeners is not required.
+     * Listeners registered anyway are called before the future is completed.</p>
+     *
+     * @param context  The context which is saved as weak reference.
+     * @return A future result of this Action.
+     */
+    public PermissiveFuture executeAsync(T context) {
+      future = new PermissiveFuture(this, null);
+      execute(context);
+      return future;
+    }
+
+    /**
+     * Executes this Action with a given context, and returns a future result,
+     * which is completed on the given executor.
+     *
+     * @param context  The context which is saved as weak reference.
+     * @param executor  The executor used to complete the future.
+     * @return A future result of this Action.
+     * @see #execute(Context, Executor)
+     */
+    public PermissiveFuture executeAsync(T context, Executor executor) {
+      future = new PermissiveFuture(this, null);
+      execute(context, executor);
+      return future;
     }
 
     protected void firePermissionsGrantedListener(String[] grantedPermissions) {
@@ -314,10 +763,15 @@ public final class Permissive {
   public static class Request extends Action<Activity> {
 
     private WeakReference<Rationale> rationaleRef;
+    /* a template of this request, or null */
+    private final RequestTemplate template;
 
     private boolean shouldDisplayRationale = true;
     private boolean showRationaleFirst = false;
+    private long timeout;
     final boolean rebuild;
+    /* Set when the request was answered by a dialog coalesced with another request. */
+    boolean coalesced;
 
     /**
      * Constructs a new Request.
@@ -332,6 +786,16 @@ public final class Permissive {
     Request(boolean rebuild, String[] permissions) {
       super(permissions);
       this.rebuild = rebuild;
+      this.template = null;
+    }
+
+    /* Inner constructor used to execute a RequestTemplate. Permissions are exposed by getPermissions(), so they are copied. */
+    Request(RequestTemplate template) {
+      super(template.permissions.clone(), template.permissionSet);
+      this.rebuild = false;
+      this.template = template;
+      this.showRationaleFirst = template.showRationaleFirst;
+      this.timeout = template.timeout;
     }
 
     /**
@@ -343,6 +807,7 @@ public final class Permissive {
      */
     public Request withRationale(Rationale rationale) {
       this.rationaleRef = new WeakReference<>(rationale);
+      captureListeners();
       return this;
     }
 
@@ -357,6 +822,29 @@ public final class Permissive {
       return this;
     }
 
+    /**
+     * Sets a timeout for each stage of this request, which waits for the user:
+     * a displayed rationale or a permissions dialog. It overrides the default timeout.
+     *
+     * @param millis A timeout in milliseconds, or {@code 0} to use the default timeout.
+     * @return {@code this} object, for method chaining.
+     * @see Permissive#setDefaultRequestTimeout(long)
+     */
+    public Request withTimeout(long millis) {
+      if (millis < 0) {
+        throw new IllegalArgumentException("millis < 0");
+      }
+      timeout = millis;
+      return this;
+    }
+
+    /**
+     * @return A timeout of this request in milliseconds, or {@code 0} when the default timeout is used.
+     */
+    public long getTimeout() {
+      return timeout;
+    }
+
     /**
      * @return {@code true} if a rationale should be displayed for this request.
      */
@@ -395,11 +883,70 @@ public final class Permissive {
       super.execute(activity);
     }
 
+    /**
+     * Executes this Request with a given Activity context, and calls listeners on the given executor.
+     *
+     * <p>Requests interact with the user, so rationales and permissions dialogs are still displayed
+     * on the main thread. Permissions are checked on the executor first, so a Request, which doesn't
+     * need a dialog, because all permissions are granted, is completed there without touching the main thread.
+     * Otherwise, only the final result is delivered on the executor.</p>
+     *
+     * @param activity  The Activity context which is saved as weak reference.
+     * @param executor  The executor used to call listeners.
+     */
+    @Override
+    public void execute(Activity activity, Executor executor) {
+      if (activity == null) {
+        throw new IllegalArgumentException("context is null");
+      }
+      if (executor == null) {
+        throw new IllegalArgumentException("executor is null");
+      }
+      activityRef = new WeakReference<>(activity);
+      this.executor = executor;
+      permissiveHandler.executeOnExecutor(this);
+    }
+
+    /**
+     * Executes this Request on the main thread, and returns a future result,
+     * which is completed on the given executor.
+     *
+     * @param activity  The Activity context which is saved as weak reference.
+     * @param executor  The executor used to complete the future.
+     * @return A future result of this Request.
+     */
+    @Override
+    public PermissiveFuture executeAsync(Activity activity, Executor executor) {
+      if (executor == null) {
+        throw new IllegalArgumentException("executor is null");
+      }
+      future = new PermissiveFuture(this, executor);
+      execute(activity);
+      return future;
+    }
+
+    @Override
+    Object[] getListeners() {
+      final Object[] listeners = super.getListeners();
+      final Object[] all = Arrays.copyOf(listeners, listeners.length + 1);
+      all[listeners.length] = getRationale();
+      return all;
+    }
+
+    @Override
+    void clearListeners() {
+      super.clearListeners();
+      rationaleRef = null;
+    }
+
     /**
      * @return a Rationale listener, registered with {@linkplain #withRationale(Rationale)}.
      */
     public Rationale getRationale() {
-      return rationaleRef != null ? rationaleRef.get() : null;
+      if (rationaleRef != null) {
+        return rationaleRef.get();
+      }
+      return template != null ? template.rationale : null;
     }
 
     @Override
@@ -412,8 +959,8 @@ public final class Permissive {
 
     protected boolean showRationale(String[] permissions, PermissiveMessenger messenger) {
       shouldDisplayRationale = false;
-      Rationale rationale;
-      if (rationaleRef != null && (rationale = rationaleRef.get()) != null) {
+      final Rationale rationale = getRationale();
+      if (rationale != null) {
         rationale.onShowRationale(getContext(), permissions, messenger);
         return true;
       }
@@ -426,4 +973,147 @@ public final class Permissive {
     }
   }
 
+  /**
+   * An immutable specification of a {@link Request}, which can be defined once (for example as a constant)
+   * and executed many times.
+   *
+   * <p>Data shared by all executions, like the set of permissions, is computed only once.
+   * Each execution creates a lightweight {@link Request}, which holds the state of a single run.</p>
+   *
+   * <pre>
+   * static final RequestTemplate CAMERA = new RequestTemplate(Manifest.permission.CAMERA)
+   *     .withRationale(CAMERA_RATIONALE);
+   *
+   * CAMERA.execute(activity, listener);
+   * </pre>
+   */
+  public static final class RequestTemplate {
+
+    final String[] permissions;
+    final PermissionSet permissionSet;
+    /* held strongly, so it should not refer to any Activity */
+    final Rationale rationale;
+    final boolean showRationaleFirst;
+    final long timeout;
+
+    /**
+     * Constructs a new template.
+     *
+     * @param permissions  A list of permissions, that are required by the request.
+     */
+    public RequestTemplate(String... permissions) {
+      this(permissions.clone(), PermissionSet.of(permissions), null, false, 0);
+    }
+
+    private RequestTemplate(String[] permissions, PermissionSet permissionSet, Rationale rationale,
+                            boolean showRationaleFirst, long timeout) {
+      this.permissions = permissions;
+      this.permissionSet = permissionSet;
+      this.rationale = rationale;
+      this.showRationaleFirst = showRationaleFirst;
+      this.timeout = timeout;
+    }
+
+    /**
+     * Returns a copy of this template with a given rationale. The rationale is held strongly,
+     * so it must not refer to any Activity. Use the {@code activity} argument of
+     * {@link Rationale#onShowRationale(Activity, String[], PermissiveMessenger)} instead.
+     *
+     * @param rationale  A rationale, or {@code null} to use a global rationale.
+     * @return A new template.
+     */
+    public RequestTemplate withRationale(Rationale rationale) {
+      return new RequestTemplate(permissions, permissionSet, rationale, showRationaleFirst, timeout);
+    }
+
+    /**
+     * Returns a copy of this template, which shows the rationale first, before requesting any permissions.
+     *
+     * @param enable When {@code true}, show the rationale first.
+     * @return A new template.
+     * @see Request#showRationaleFirst(boolean)
+     */
+    public RequestTemplate showRationaleFirst(boolean enable) {
+      return new RequestTemplate(permissions, permissionSet, rationale, enable, timeout);
+    }
+
+    /**
+     * Returns a copy of this template with a given timeout.
+     *
+     * @param millis A timeout in milliseconds, or {@code 0} to use the default timeout.
+     * @return A new template.
+     * @see Request#withTimeout(long)
+     */
+    public RequestTemplate withTimeout(long millis) {
+      if (millis < 0) {
+        throw new IllegalArgumentException("millis < 0");
+      }
+      return new RequestTemplate(permissions, permissionSet, rationale, showRationaleFirst, millis);
+    }
+
+    /**
+     * @return A copy of permissions required by this template.
+     */
+    public String[] getPermissions() {
+      return permissions.clone();
+    }
+
+    /**
+     * @return A set of permissions required by this template.
+     */
+    PermissionSet getPermissionSet() {
+      return permissionSet;
+    }
+
+    /**
+     * @return A rationale of this template, or {@code null}.
+     */
+    public Rationale getRationale() {
+      return rationale;
+    }
+
+    /**
+     * Creates a new Request, that can be customized before it's executed.
+     *
+     * @return A new Request based on this template.
+     */
+    public Request newRequest() {
+      return new Request(this);
+    }
+
+    /**
+     * Executes a new Request based on this template.
+     *
+     * @param activity  The Activity context which is saved as weak reference.
+     * @param listener  A listener, which is held strongly until the Request completes. Can be {@code null}.
+     * @return A handle of this execution.
+     */
+    public Request execute(Activity activity, PermissionsResultListener listener) {
+      final Request request = new Request(this);
+      request.heldResultListener = listener;
+      request.execute(activity);
+      return request;
+    }
+
+    /**
+     * Executes a new Request based on this template, and returns a future result.
+     *
+     * @param activity  The Activity context which is saved as weak reference.
+     * @return A future result of the execution.
+     * @see Action#executeAsync(Context)
+     */
+    public PermissiveFuture executeAsync(Activity activity) {
+      return new Request(this).executeAsync(activity);
+    }
+
+    @Override
+    public String toString() {
+      return "RequestTemplate{" + Arrays.toString(permissions)
+          + ", rationale=" + rationale
+          + ", showRationaleFirst=" + showRationaleFirst
+          + ", timeout=" + timeout
+          + '}';
+    }
+  }
+
 }
@@ -0,0 +1,200 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+
+/**
+ * Dispatches results of permissions requests, which are asked directly with
+ * {@link Activity#requestPermissions(String[], int)}, without a {@link PermissiveFragment}.
+ *
+ * <p>It saves two fragment transactions per dialog, so the dialog is displayed sooner.
+ * An Activity opts in by implementing {@link Host} and forwarding results:</p>
+ * <pre>
+ * public class MainActivity extends Activity implements PermissiveDispatcher.Host {
+ *
+ *   &#64;Override
+ *   public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+ *     if (!PermissiveDispatcher.dispatchRequestPermissionsResult(this, requestCode, permissions, grantResults)) {
+ *       super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+ *     }
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>Other activities still use {@link PermissiveFragment}. A pending direct request is saved with
+ * the state of its host. After a configuration change, the recreated host takes over the request.
+ * After the process was killed, the request is rebuilt, so the restored dialog still gets its answer;
+ * listeners can be registered again with {@link #rebuildRequest(Activity, Bundle)}.
+ * Call {@link Permissive#init(Application)} to get it rebuilt, before the host asks for it.</p>
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public final class PermissiveDispatcher {
+
+  /**
+   * A request code used for direct permissions requests.
+   */
+  public static final int REQUEST_CODE = 0x5045;
+
+  /**
+   * A marker of an Activity, which forwards results of permissions requests
+   * to {@link #dispatchRequestPermissionsResult(Activity, int, String[], int[])}.
+   */
+  public interface Host {
+  }
+
+  private static final String STATE_KEY = "com.github.jksiezni.permissive.direct_request";
+
+  private static final String PROCESS = "process";
+  private static final String LANE_ID = "lane_id";
+  private static final String PERMISSIONS = "permissions";
+  private static final String RATIONALE_BEFORE = "rationale_before";
+
+  private static boolean callbacksRegistered;
+
+  private PermissiveDispatcher() { /* never instantiated */ }
+
+  /**
+   * Dispatches a result of a direct permissions request. Call it from
+   * {@link Activity#onRequestPermissionsResult(int, String[], int[])} of the {@link Host}.
+   *
+   * @param activity The host Activity.
+   * @param requestCode A request code.
+   * @param permissions Requested permissions.
+   * @param grantResults Grant results.
+   * @return {@code true} if the result was consumed, otherwise {@code false}.
+   */
+  public static boolean dispatchRequestPermissionsResult(Activity activity, int requestCode,
+                                                         String[] permissions, int[] grantResults) {
+    if (requestCode != REQUEST_CODE) {
+      return false;
+    }
+    Permissive.permissionCache.update(permissions, grantResults);
+    Permissive.permissiveHandler.onDirectResult(activity, permissions, grantResults);
+    return true;
+  }
+
+  /**
+   * Rebuilds a request, which was asked directly with the host, when the process was killed
+   * while its dialog was displayed. Call it from {@link Activity#onCreate(Bundle)} of the {@link Host},
+   * to register listeners of the rebuilt request.
+   *
+   * @param host The host Activity.
+   * @param savedInstanceState The saved state of the host.
+   * @return The rebuilt request, or null if there is nothing to rebuild.
+   */
+  public static Permissive.Request rebuildRequest(Activity host, Bundle savedInstanceState) {
+    if (savedInstanceState == null || !canRequestDirectly(host)) {
+      return null;
+    }
+    return restoreState(host, savedInstanceState);
+  }
+
+  static boolean canRequestDirectly(Activity activity) {
+    return activity instanceof Host && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+  }
+
+  static void requestPermissions(Activity activity, String[] permissions) {
+    registerLifecycleCallbacks(activity.getApplication());
+    activity.requestPermissions(permissions, REQUEST_CODE);
+  }
+
+  static void saveState(Activity host, Bundle outState) {
+    final PermissiveHandler.DirectRequest request = Permissive.permissiveHandler.getDirectRequest(host);
+    if (request == null) {
+      return;
+    }
+    final Bundle state = new Bundle();
+    state.putString(PROCESS, SavedRequests.PROCESS_TOKEN);
+    state.putInt(LANE_ID, request.laneId);
+    state.putStringArray(PERMISSIONS, request.permissions);
+    state.putStringArray(RATIONALE_BEFORE, request.rationaleBefore);
+    outState.putBundle(STATE_KEY, state);
+  }
+
+  /**
+   * Binds a saved direct request to the recreated host, or rebuilds it if the process was killed.
+   *
+   * @return The rebuilt request, or null.
+   */
+  static Permissive.Request restoreState(Activity host, Bundle savedInstanceState) {
+    final Bundle state = savedInstanceState.getBundle(STATE_KEY);
+    if (state == null) {
+      return null;
+    }
+    final PermissiveHandler handler = Permissive.permissiveHandler;
+    if (SavedRequests.PROCESS_TOKEN.equals(state.getString(PROCESS))) {
+      handler.rebindDirectRequest(host, state.getInt(LANE_ID));
+      return null;
+    }
+    final String[] permissions = state.getStringArray(PERMISSIONS);
+    if (permissions == null) {
+      return null;
+    }
+    return handler.rebuildDirectRequest(host, permissions, state.getStringArray(RATIONALE_BEFORE));
+  }
+
+  static void registerLifecycleCallbacks(Application application) {
+    if (callbacksRegistered || application == null) {
+      return;
+    }
+    callbacksRegistered = true;
+    application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+      @Override
+      public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (activity instanceof Host && savedInstanceState != null) {
+          restoreState(activity, savedInstanceState);
+        }
+      }
+
+      @Override
+      public void onActivityStarted(Activity activity) {
+      }
+
+      @Override
+      public void onActivityResumed(Activity activity) {
+      }
+
+      @Override
+      public void onActivityPaused(Activity activity) {
+      }
+
+      @Override
+      public void onActivityStopped(Activity activity) {
+      }
+
+      @Override
+      public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        if (activity instanceof Host) {
+          saveState(activity, outState);
+        }
+      }
+
+      @Override
+      public void onActivityDestroyed(Activity activity) {
+        if (activity instanceof Host && !activity.isChangingConfigurations()) {
+          // the result will never arrive, like when PermissiveFragment is destroyed without a result
+          Permissive.permissiveHandler.onDirectHostDestroyed(activity);
+        }
+      }
+    });
+  }
+}
@@ -24,10 +24,9 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.Arrays;
-
 /**
  * This a data fragment (not visible to user) used to request permissions on Android Marshmallow (API-23) or newer.
  *
@@ -44,21 +43,35 @@ public class PermissiveFragment extends Fragment {
 
   private static final String PERMISSIONS = "permissions";
   private static final String MESSENGER = "messenger";
+  private static final String LANE_ID = "lane_id";
+  private static final String REQUEST_ID = "request_id";
+  private static final String PROCESS = "process";
+  private static final String REQUEST_TIME = "request_time";
   private static final String WAITING_FOR_RESULT = "waiting_for_result";
+  private static final String RATIONALE_BEFORE = "rationale_before";
 
   private String[] permissions;
+  private PermissionSet permissionSet;
   private Messenger messenger;
+  private int laneId;
+  private int requestId;
 
-  static PermissiveFragment create(String[] permissions, Handler handler) {
+  static PermissiveFragment create(String[] permissions, Handler handler, int laneId, int requestId) {
     final PermissiveFragment f = new PermissiveFragment();
     final Bundle bundle = new Bundle();
     bundle.putStringArray(PERMISSIONS, permissions);
     bundle.putParcelable(MESSENGER, new Messenger(handler));
+    bundle.putInt(LANE_ID, laneId);
+    bundle.putInt(REQUEST_ID, requestId);
+    bundle.putString(PROCESS, SavedRequests.PROCESS_TOKEN);
+    bundle.putLong(REQUEST_TIME, SystemClock.uptimeMillis());
     f.setArguments(bundle);
     return f;
   }
 
   private boolean waitingForResult;
+  /* permissions, for which a rationale was expected right before the dialog */
+  private String[] rationaleBefore;
 
   private RequestPermissionsResult result;
 
@@ -67,10 +80,11 @@ public class PermissiveFragment extends Fragment {
     super.onCreate(savedInstanceState);
     setRetainInstance(true);
     permissions = getArguments().getStringArray(PERMISSIONS);
+    permissionSet = PermissionSet.of(permissions);
     messenger = getArguments().getParcelable(MESSENGER);
-    if (DEBUG) {
-      Log.v(TAG, "onCreate(): " + Arrays.toString(permissions));
-    }
+    laneId = getArguments().getInt(LANE_ID);
+    requestId = getArguments().getInt(REQUEST_ID);
+    record(EventRecorder.FRAGMENT_CREATE, savedInstanceState != null ? 1 : 0);
   }
 
   @Override
@@ -78,6 +92,7 @@ public class PermissiveFragment extends Fragment {
     super.onActivityCreated(savedInstanceState);
     if (savedInstanceState != null) {
       waitingForResult = savedInstanceState.getBoolean(WAITING_FOR_RESULT);
+      rationaleBefore = savedInstanceState.getStringArray(RATIONALE_BEFORE);
       if (!restoreActivity() && !waitingForResult) {
         Log.e(TAG, "It should never happen, that we close this fragment before any results are received!");
         closeFragment();
@@ -88,11 +103,10 @@ public class PermissiveFragment extends Fragment {
   @Override
   public void onStart() {
     super.onStart();
-    if (DEBUG) {
-      Log.v(TAG, "onStart(): requestingPermission=" + (permissions != null && !waitingForResult));
-    }
+    record(EventRecorder.FRAGMENT_START, permissions != null && !waitingForResult ? 1 : 0);
     if (permissions != null && !waitingForResult) {
       waitingForResult = true;
+      rationaleBefore = Permissive.denials.expectingRationale(getActivity(), permissions);
       requestPermissions(permissions, 42);
     }
   }
@@ -100,9 +114,7 @@ public class PermissiveFragment extends Fragment {
   @Override
   public void onResume() {
     super.onResume();
-    if (DEBUG) {
-      Log.v(TAG, "onResume():");
-    }
+    record(EventRecorder.FRAGMENT_RESUME, hasResult() ? 1 : 0);
     if (hasResult()) {
       closeFragment();
     }
@@ -111,9 +123,7 @@ public class PermissiveFragment extends Fragment {
   @Override
   public void onDestroy() {
     super.onDestroy();
-    if (DEBUG) {
-      Log.v(TAG, "onDestroy(): isRemoving=" + isRemoving());
-    }
+    record(EventRecorder.FRAGMENT_DESTROY, isRemoving() ? 1 : 0);
     if (hasResult()) {
       sendMsg(PermissiveHandler.PERMISSIONS_RESULT, result);
     } else if (!isRemoving()) {
@@ -123,10 +133,14 @@ public class PermissiveFragment extends Fragment {
 
   @Override
   public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
-    if (DEBUG) {
-      Log.v("PermissiveFragment", "Results: " + Arrays.toString(permissions) + " = " + Arrays.toString(grantResults));
-    }
+    record(EventRecorder.FRAGMENT_RESULT, grantResults.length);
     waitingForResult = false;
+    Permissive.permissionCache.update(permissions, grantResults);
+    if (getActivity() != null) {
+      Permissive.denials.onPermissionsResult(getActivity(), permissions, grantResults, rationaleBefore);
+    }
+    Permissive.metrics.onPermissionsDialogFinished(permissions,
+        SystemClock.uptimeMillis() - getArguments().getLong(REQUEST_TIME));
 
     // save result, postpone sending this event until this fragment is resumed
     result = new RequestPermissionsResult(permissions, grantResults);
@@ -141,9 +155,8 @@ public class PermissiveFragment extends Fragment {
   public void onSaveInstanceState(Bundle outState) {
     super.onSaveInstanceState(outState);
     outState.putBoolean(WAITING_FOR_RESULT, waitingForResult);
-    if (DEBUG) {
-      Log.v("PermissiveFragment", "onSaveInstanceState(): waitingForResult=" + waitingForResult);
-    }
+    outState.putStringArray(RATIONALE_BEFORE, rationaleBefore);
+    record(EventRecorder.FRAGMENT_SAVE_STATE, waitingForResult ? 1 : 0);
   }
 
   private void closeFragment() {
@@ -165,10 +178,15 @@ public class PermissiveFragment extends Fragment {
   }
 
   private boolean sendMsg(int what, Object obj) {
+    if (messenger == null) {
+      return false;
+    }
     try {
       Message msg = Message.obtain();
       msg.what = what;
       msg.obj = obj;
+      msg.arg1 = requestId;
+      msg.arg2 = laneId;
       messenger.send(msg);
       return true;
     } catch (RemoteException e) {
@@ -179,7 +197,31 @@ public class PermissiveFragment extends Fragment {
     }
   }
 
-  void setMessenger(Messenger messenger) {
+  private void record(int event, int arg) {
+    Permissive.events.record(event, 0, laneId, arg, permissionSet);
+  }
+
+  /**
+   * Detaches the fragment from its request, which was canceled, so no more messages are sent.
+   */
+  void abandon() {
+    messenger = null;
+  }
+
+  /**
+   * @return An id of the lane, which waits for the result, or 0 if the fragment was abandoned
+   * or restored after the process was killed, because lane ids are not valid anymore.
+   */
+  int getLaneId() {
+    if (messenger == null || !SavedRequests.PROCESS_TOKEN.equals(getArguments().getString(PROCESS))) {
+      return 0;
+    }
+    return laneId;
+  }
+
+  void setMessenger(Messenger messenger, int laneId, int requestId) {
     this.messenger = messenger;
+    this.laneId = laneId;
+    this.requestId = requestId;
   }
 }
@@ -0,0 +1,250 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A future result of an {@link Permissive.Action} or {@link Permissive.Request},
+ * returned by {@link Permissive.Action#executeAsync(android.content.Context)}.
+ *
+ * <p>The future is completed with a {@link Result}, which tells granted and refused permissions of the action.</p>
+ *
+ * <p>The future is completed on the main thread, unless an executor is given to {@code executeAsync}.
+ * When {@link Permissive#setSynchronousFastPath(boolean)} is enabled, then it may be already completed
+ * when {@code executeAsync} returns.</p>
+ *
+ * <p>Unlike listeners, the future is strongly referenced by its action, so the result is never lost.
+ * Continuations can be chained with {@link #addListener(Runnable, Executor)}.</p>
+ *
+ * <p>Cancelling the future removes its action from the queue. When permissions are already
+ * being asked, the dialog can't be dismissed, so the result is just dropped.</p>
+ *
+ * <p><b>Note:</b> <i>Never block the main thread with {@link #get()}, because results are delivered there.</i></p>
+ */
+public final class PermissiveFuture implements Future<PermissiveFuture.Result> {
+
+  private static final int PENDING = 0;
+  private static final int COMPLETED = 1;
+  private static final int CANCELLED = 2;
+
+  private final Permissive.Action<?> action;
+  /* an executor used to complete the future, or null to complete it on the calling thread */
+  private final Executor executor;
+
+  private int state = PENDING;
+  private Result result;
+  private List<Runnable> listeners;
+
+  PermissiveFuture(Permissive.Action<?> action, Executor executor) {
+    this.action = action;
+    this.executor = executor;
+  }
+
+  /**
+   * Registers a listener, which is called on the given executor once this future is done.
+   * When the future is already done, then the listener is called immediately.
+   *
+   * @param listener A listener to be called.
+   * @param executor An executor used to call the listener.
+   */
+  public void addListener(final Runnable listener, final Executor executor) {
+    if (listener == null) {
+      throw new IllegalArgumentException("listener is null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor is null");
+    }
+    final Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(listener);
+      }
+    };
+    synchronized (this) {
+      if (state == PENDING) {
+        if (listeners == null) {
+          listeners = new ArrayList<>(2);
+        }
+        listeners.add(task);
+        return;
+      }
+    }
+    task.run();
+  }
+
+  /**
+   * Cancels the future and removes its action from the queue.
+   * Listeners of a removed action are never called.
+   *
+   * @param mayInterruptIfRunning Ignored, because nothing blocks while waiting for the user.
+   * @return {@code false} if the future was already done.
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    if (!finish(CANCELLED, null)) {
+      return false;
+    }
+    Permissive.permissiveHandler.cancelAction(action);
+    return true;
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return state == CANCELLED;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return state != PENDING;
+  }
+
+  @Override
+  public synchronized Result get() throws InterruptedException, ExecutionException {
+    while (state == PENDING) {
+      wait();
+    }
+    return getResult();
+  }
+
+  @Override
+  public synchronized Result get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    long remaining = unit.toNanos(timeout);
+    final long deadline = System.nanoTime() + remaining;
+    while (state == PENDING) {
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      remaining = deadline - System.nanoTime();
+    }
+    return getResult();
+  }
+
+  private Result getResult() {
+    if (state == CANCELLED) {
+      throw new CancellationException();
+    }
+    return result;
+  }
+
+  /**
+   * Completes the future with the result of its action, on the chosen executor.
+   */
+  void complete(RequestPermissionsResult permissionsResult) {
+    final Result result = new Result(permissionsResult.grantedPermissions(), permissionsResult.refusedPermissions());
+    if (executor == null) {
+      finish(COMPLETED, result);
+      return;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        finish(COMPLETED, result);
+      }
+    });
+  }
+
+  /**
+   * Cancels the future, when its action can't be finished (for example, the context has gone).
+   */
+  void abandon() {
+    finish(CANCELLED, null);
+  }
+
+  private boolean finish(int newState, Result newResult) {
+    final List<Runnable> toNotify;
+    synchronized (this) {
+      if (state != PENDING) {
+        return false;
+      }
+      state = newState;
+      result = newResult;
+      toNotify = listeners;
+      listeners = null;
+      notifyAll();
+    }
+    if (toNotify != null) {
+      for (Runnable listener : toNotify) {
+        listener.run();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A result of an action: permissions granted and refused to the app.
+   */
+  public static final class Result {
+    private final String[] grantedPermissions;
+    private final String[] refusedPermissions;
+
+    Result(String[] grantedPermissions, String[] refusedPermissions) {
+      this.grantedPermissions = grantedPermissions;
+      this.refusedPermissions = refusedPermissions;
+    }
+
+    /**
+     * @return Granted permissions of the action. The array may be empty.
+     */
+    public String[] getGrantedPermissions() {
+      return grantedPermissions.clone();
+    }
+
+    /**
+     * @return Refused permissions of the action. The array may be empty.
+     */
+    public String[] getRefusedPermissions() {
+      return refusedPermissions.clone();
+    }
+
+    /**
+     * @return {@code true} if all permissions of the action are granted.
+     */
+    public boolean areAllGranted() {
+      return refusedPermissions.length == 0;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{"
+          + "granted=" + Arrays.toString(grantedPermissions)
+          + ", refused=" + Arrays.toString(refusedPermissions)
+          + '}';
+    }
+  }
+
+  @Override
+  public String toString() {
+    final int currentState;
+    synchronized (this) {
+      currentState = state;
+    }
+    return "PermissiveFuture{"
+        + (currentState == PENDING ? "pending" : currentState == COMPLETED ? "completed" : "cancelled")
+        + ", action=" + action
+        + '}';
+  }
+}
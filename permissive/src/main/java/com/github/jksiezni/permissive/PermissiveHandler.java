@@ -25,17 +25,25 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * One of core classes, that implements a state machine for permissions handling.
  */
 class PermissiveHandler {
   private static final String TAG = PermissiveHandler.class.getSimpleName();
-  private static final boolean DEBUG = BuildConfig.DEBUG;
 
   private static final int REQUEST_PERMISSIONS = 1;
 
@@ -44,6 +52,24 @@ class PermissiveHandler {
   static final int REPEAT_REQUEST = 4;
   static final int CANCEL_REQUEST = 5;
   static final int UPDATE_LISTENER = 6;
+  private static final int PROCESS_PENDING_ACTIONS = 7;
+  private static final int STAGE_TIMEOUT = 8;
+  private static final int CANCEL_ACTION = 9;
+
+  private static final String TRACE_ACTION = "Permissive.Action";
+  private static final String TRACE_PROCESS_PENDING_ACTIONS = "Permissive.processPendingActions";
+  private static final String TRACE_FIRE_CALLBACKS = "Permissive.fireActionCallbacks";
+  private static final String TRACE_ASK_FOR_PERMISSIONS = "Permissive.askForPermissions";
+
+  private static final AtomicInteger traceCookies = new AtomicInteger();
+
+  /**
+   * @return {@code true} for messages, which carry an id of the request in {@code arg1},
+   * so they are accepted only by the same request.
+   */
+  private static boolean isAddressedToRequest(int what) {
+    return what == PERMISSIONS_RESULT || what == REPEAT_REQUEST || what == CANCEL_REQUEST || what == UPDATE_LISTENER;
+  }
 
   private static String getMessageString(int what) {
     switch (what) {
@@ -59,74 +85,199 @@ class PermissiveHandler {
         return "CANCEL_REQUEST";
       case UPDATE_LISTENER:
         return "UPDATE_LISTENER";
+      case PROCESS_PENDING_ACTIONS:
+        return "PROCESS_PENDING_ACTIONS";
+      case STAGE_TIMEOUT:
+        return "STAGE_TIMEOUT";
+      case CANCEL_ACTION:
+        return "CANCEL_ACTION";
       default:
         return "Unknown msg: " + what;
     }
   }
 
+  /**
+   * A lane groups actions and requests executed with the same Activity, so they are processed
+   * one by one. Independent lanes (for example in multi-window mode) make progress at the same time.
+   * Actions executed with a non-Activity context use a separate lane, which never displays any UI.
+   */
+  private static final class Lane {
+    final int id;
+    final LinkedList<Permissive.Action> pendingActions = new LinkedList<>();
+    final List<Permissive.Request> coalescedRequests = new ArrayList<>();
+    volatile Permissive.Action currentAction;
+    /* uptime when the current rationale was displayed, or 0 */
+    long rationaleStartTime;
+    /* null for the context lane */
+    volatile WeakReference<Activity> activityRef;
+    /* uptime when permissions were asked directly with the Activity, or 0 */
+    long directRequestTime;
+    /* permissions asked directly with the Activity, or null */
+    String[] directPermissions;
+    /* permissions, for which a rationale was expected before the direct request */
+    String[] rationaleBefore;
+    /* the depth published for other threads, which can't read the queue itself */
+    volatile int publishedDepth;
+
+    Lane(int id, Activity activity) {
+      this.id = id;
+      this.activityRef = activity != null ? new WeakReference<>(activity) : null;
+    }
+
+    boolean isBoundTo(Context context) {
+      if (activityRef == null) {
+        return !(context instanceof Activity);
+      }
+      return context instanceof Activity && activityRef.get() == context;
+    }
+
+    boolean isIdle() {
+      return currentAction == null && pendingActions.isEmpty();
+    }
+
+    int depth() {
+      return pendingActions.size() + coalescedRequests.size() + (currentAction != null ? 1 : 0);
+    }
+
+    void publishDepth() {
+      publishedDepth = depth();
+    }
+
+    @Override
+    public String toString() {
+      return "Lane#" + id + (activityRef != null ? "{" + activityRef.get() + '}' : "{context}");
+    }
+  }
+
   private class MessageHandler implements Handler.Callback {
 
-    private final Queue<Permissive.Action> pendingActions = new LinkedList<>();
-    private Permissive.Action currentAction = null;
+    private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+    private int nextLaneId = 1;
+
+    private final int[] messageCounts = new int[CANCEL_ACTION + 1];
 
     @Override
     public boolean handleMessage(Message msg) {
-      if(DEBUG) {
-        Log.v(TAG, String.format("handleMessage: %s with obj=%s",
-            getMessageString(msg.what),
-            msg.obj));
+      final PermissiveTracer tracer = Permissive.tracer;
+      final String name = getMessageString(msg.what);
+      tracer.beginSection(name);
+      try {
+        if (msg.what >= 0 && msg.what < messageCounts.length) {
+          tracer.setCounter(name, ++messageCounts[msg.what]);
+        }
+        return dispatchMessage(msg);
+      } finally {
+        publishDepths();
+        tracer.endSection();
       }
-      switch (msg.what) {
-        case REQUEST_PERMISSIONS:
-          pendingActions.add((Permissive.Action) msg.obj);
-          if(DEBUG) {
-            dumpPendingActions();
+    }
+
+    /**
+     * Publishes depths of all lanes, after they were modified on the handler's thread.
+     */
+    void publishDepths() {
+      for (Lane lane : lanes) {
+        lane.publishDepth();
+      }
+    }
+
+    private boolean dispatchMessage(Message msg) {
+      if (msg.what == REQUEST_PERMISSIONS) {
+        final Permissive.Action action = (Permissive.Action) msg.obj;
+        if (action.executor != null && !(action instanceof Permissive.Request)) {
+          final Lane lane = findLane(action.getContext());
+          if (lane == null || lane.isIdle()) {
+            // nothing waits in the lane, so the action is handed over to its executor right away
+            finalizeAction(action);
+            return true;
           }
-          if (currentAction == null) {
-            currentAction = processPendingActions();
+        }
+        final Lane lane = obtainLane(action.getContext());
+        action.enqueueTime = SystemClock.uptimeMillis();
+        lane.pendingActions.add(action);
+        final int depth = lane.depth();
+        Permissive.events.record(EventRecorder.ENQUEUE, action, lane.id, depth);
+        Permissive.metrics.onActionEnqueued(action, depth);
+        if (lane.currentAction == null && !handler.hasMessages(PROCESS_PENDING_ACTIONS, lane)) {
+          if (coalescingWindow > 0 && action instanceof Permissive.Request) {
+            // wait a moment for other requests, so they can be asked with a single dialog
+            handler.sendMessageDelayed(handler.obtainMessage(PROCESS_PENDING_ACTIONS, lane), coalescingWindow);
+          } else {
+            processPendingActions(lane);
           }
-          break;
+        }
+        return true;
+      }
+      if (msg.what == PROCESS_PENDING_ACTIONS) {
+        final Lane lane = (Lane) msg.obj;
+        if (lane.currentAction == null) {
+          processPendingActions(lane);
+        }
+        return true;
+      }
+      if (msg.what == CANCEL_ACTION) {
+        removeAction((Permissive.Action) msg.obj);
+        return true;
+      }
+
+      final Lane lane = findLane(msg.arg2);
+      final Permissive.Action currentAction = lane != null ? lane.currentAction : null;
+      Permissive.events.record(EventRecorder.MESSAGE, currentAction != null ? currentAction.id : 0, msg.arg2, msg.what, null);
+      if (isAddressedToRequest(msg.what) && (currentAction == null || currentAction.id != msg.arg1)) {
+        // sent for a request, which is already finished (for example after a timeout), so the lane moved on
+        Log.w(TAG, "Dropped " + getMessageString(msg.what) + " for a finished request #" + msg.arg1);
+        return true;
+      }
+      if (lane != null && msg.what != RESTORE_ACTIVITY && msg.what != UPDATE_LISTENER) {
+        // the current stage is finished, so its watchdog is not needed anymore
+        handler.removeMessages(STAGE_TIMEOUT, lane);
+        clearDirectRequest(lane);
+        finishRationale(lane, currentAction);
+      }
+      switch (msg.what) {
         case PERMISSIONS_RESULT:
-          if (currentAction == null) {
-            Log.e(TAG, "Unable to process result for non-existent action.");
-            // FIXME: find out when it happens
-            break;
-          }
-          if (!processPermissionsResultFor(currentAction, (RequestPermissionsResult) msg.obj)) {
-            currentAction = processPendingActions();
+          releaseCoalescedRequests(lane, false);
+          if (!processPermissionsResultFor(lane, currentAction, (RequestPermissionsResult) msg.obj)) {
+            processPendingActions(lane);
           }
           break;
         case REPEAT_REQUEST:
           if (currentAction instanceof Permissive.Request) {
             final Permissive.Request request = (Permissive.Request) currentAction;
-            request.shouldDisplayRationale(msg.arg1 > 0);
-            if (!requestPermissions(request)) {
+            request.shouldDisplayRationale(Boolean.TRUE.equals(msg.obj));
+            if (queueBehindFragmentLane(lane, request)) {
+              processPendingActions(lane);
+            } else if (!requestPermissions(lane, request)) {
               finalizeAction(currentAction);
-              currentAction = processPendingActions();
+              processPendingActions(lane);
             }
           }
           break;
         case CANCEL_REQUEST:
+          releaseCoalescedRequests(lane, true);
+          finalizeAction(currentAction);
+          processPendingActions(lane);
+          break;
+        case STAGE_TIMEOUT:
           if (currentAction == null) {
-            Log.e(TAG, "Unable to cancel a non-existent action.");
-            // TODO: add identifiers to running actions, so incoming messages can be matched with actions
             break;
           }
+          Log.w(TAG, "A request stalled for " + msg.arg1 + "ms, so it's canceled: " + currentAction);
+          Permissive.events.record(EventRecorder.STAGE_TIMEOUT, currentAction, lane.id, msg.arg1);
+          if (currentAction instanceof Permissive.Request) {
+            Permissive.metrics.onStageTimeout((Permissive.Request) currentAction, msg.arg1);
+          }
+          removeRequestFragment(lane);
+          releaseCoalescedRequests(lane, true);
           finalizeAction(currentAction);
-          currentAction = processPendingActions();
+          processPendingActions(lane);
           break;
         case RESTORE_ACTIVITY:
-          if (currentAction instanceof Permissive.Request) {
-            Permissive.Request request = (Permissive.Request) currentAction;
-            request.updateActivityRef((Activity) msg.obj);
+          if (lane != null) {
+            restoreActivity(lane, (Activity) msg.obj);
           }
           break;
         case UPDATE_LISTENER:
-          if (currentAction == null) {
-            Log.e(TAG, "Unable to update listener for non-existent action: " + msg.obj);
-            // TODO: add identifiers to running actions, so incoming messages can be matched with actions
-            break;
-          }
           if (msg.obj instanceof PermissionsResultListener) {
             currentAction.whenPermissionsResultReceived((PermissionsResultListener) msg.obj);
           }
@@ -135,48 +286,529 @@ class PermissiveHandler {
       return true;
     }
 
-    private void dumpPendingActions() {
-      String current = currentAction == null ? "none" : currentAction.toString();
-      StringBuilder builder = new StringBuilder("current) " + current + "\n");
-      int count = 0;
-      for (Permissive.Action action : pendingActions) {
-        builder.append(++count);
-        builder.append(") ");
-        builder.append(action.toString());
-        builder.append('\n');
+    /**
+     * Removes a pending action from its lane. The current action can't be removed,
+     * because a rationale or a permissions dialog is already displayed.
+     */
+    private void removeAction(Permissive.Action action) {
+      for (Lane lane : lanes) {
+        if (lane.pendingActions.remove(action) || lane.coalescedRequests.remove(action)) {
+          Permissive.events.record(EventRecorder.REMOVE, action, lane.id, lane.depth());
+          endActionTrace(action);
+          // the action will never complete, so its scope is not needed anymore
+          final LifecycleScopes.Scope scope = action.scope;
+          if (scope != null) {
+            Permissive.scopes.release(scope);
+          }
+          if (lane.isIdle() && !handler.hasMessages(PROCESS_PENDING_ACTIONS, lane)) {
+            lanes.remove(lane);
+          }
+          return;
+        }
+      }
+    }
+
+    /**
+     * Removes a request fragment, which is left in the lane's activity after a timeout.
+     * Otherwise, the fragment would be reused by the next request, and a late result
+     * of the canceled request would be delivered to it.
+     */
+    private void removeRequestFragment(Lane lane) {
+      final Activity activity = lane.activityRef != null ? lane.activityRef.get() : null;
+      if (activity == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+        return;
+      }
+      final FragmentManager fm = activity.getFragmentManager();
+      final PermissiveFragment frag = (PermissiveFragment) fm.findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+      if (frag != null) {
+        frag.abandon();
+        fm.beginTransaction()
+            .remove(frag)
+            .commitAllowingStateLoss();
+      }
+    }
+
+    /**
+     * Binds the lane to the recreated Activity. Actions, which were already executed with the new instance
+     * in another lane, are queued behind the lane, so the Activity is served by a single lane again.
+     */
+    private void restoreActivity(Lane lane, Activity activity) {
+      if (lane.activityRef == null) {
+        return;
+      }
+      lane.activityRef = new WeakReference<>(activity);
+      final Permissive.Action currentAction = lane.currentAction;
+      if (currentAction instanceof Permissive.Request) {
+        ((Permissive.Request) currentAction).updateActivityRef(activity);
+        for (Permissive.Request request : lane.coalescedRequests) {
+          request.updateActivityRef(activity);
+        }
+      }
+      for (Lane other : lanes) {
+        if (other == lane || !other.isBoundTo(activity) || other.pendingActions.isEmpty()) {
+          continue;
+        }
+        lane.pendingActions.addAll(other.pendingActions);
+        other.pendingActions.clear();
+        if (other.currentAction == null) {
+          handler.removeMessages(PROCESS_PENDING_ACTIONS, other);
+          lanes.remove(other);
+        }
+        if (lane.currentAction == null && !handler.hasMessages(PROCESS_PENDING_ACTIONS, lane)) {
+          handler.obtainMessage(PROCESS_PENDING_ACTIONS, lane).sendToTarget();
+        }
+      }
+    }
+
+    /**
+     * Finds a lane, which waits for a result of the request fragment retained in the Activity.
+     * After a rotation, the fragment is attached to the recreated Activity, before its lane is rebound to it.
+     */
+    private Lane findFragmentLane(Activity activity) {
+      if (activity == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+        return null;
+      }
+      final PermissiveFragment frag = (PermissiveFragment) activity.getFragmentManager()
+          .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+      return frag != null ? findLane(frag.getLaneId()) : null;
+    }
+
+    /**
+     * Moves the request with the rest of its lane behind another lane, which waits for a result
+     * of the request fragment retained in the same Activity. The fragment is never taken over,
+     * because the result of the other request would be delivered to this one.
+     *
+     * @return {@code true} if the request was moved, otherwise {@code false}.
+     */
+    private boolean queueBehindFragmentLane(Lane lane, Permissive.Request request) {
+      final Activity activity = request.getContext();
+      final Lane owner = findFragmentLane(activity);
+      if (owner == null || owner == lane) {
+        return false;
+      }
+      lane.pendingActions.addFirst(request);
+      lane.currentAction = null;
+      restoreActivity(owner, activity);
+      return true;
+    }
+
+    private Lane obtainLane(Context context) {
+      Lane lane = findLane(context);
+      if (lane == null && context instanceof Activity) {
+        // the Activity was recreated, while its lane waits for a result of the retained fragment
+        lane = findFragmentLane((Activity) context);
+        if (lane != null) {
+          restoreActivity(lane, (Activity) context);
+        }
+      }
+      if (lane == null) {
+        lane = new Lane(nextLaneId++, context instanceof Activity ? (Activity) context : null);
+        lanes.add(lane);
+      }
+      return lane;
+    }
+
+    Lane findLane(Context context) {
+      for (Lane lane : lanes) {
+        if (lane.isBoundTo(context)) {
+          return lane;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Finds the lane, which waits for a result of a direct request asked with the Activity.
+     * A recreated Activity is bound to the lane by {@link #rebindDirectRequest(Activity, int)}.
+     */
+    Lane findDirectLane(Activity activity) {
+      final Lane lane = findLane(activity);
+      return lane != null && lane.directRequestTime > 0 ? lane : null;
+    }
+
+    private Lane findLane(int id) {
+      for (Lane lane : lanes) {
+        if (lane.id == id) {
+          return lane;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Processes pending actions of the lane, until one of them has to wait for the user.
+     * An idle lane is dropped, so lanes don't outlive their activities.
+     */
+    private void processPendingActions(Lane lane) {
+      final PermissiveTracer tracer = Permissive.tracer;
+      tracer.beginSection(TRACE_PROCESS_PENDING_ACTIONS);
+      try {
+        lane.currentAction = pollPendingActions(lane);
+        if (lane.isIdle() && !handler.hasMessages(PROCESS_PENDING_ACTIONS, lane)) {
+          lanes.remove(lane);
+        }
+      } finally {
+        tracer.endSection();
       }
-      Log.v(TAG, builder.toString());
     }
 
-    private Permissive.Action processPendingActions() {
+    private Permissive.Action pollPendingActions(Lane lane) {
       Permissive.Action action;
-      while ((action = pendingActions.poll()) != null) {
-        if(DEBUG) {
-          Log.v(TAG, "processing: " + action);
+      while ((action = lane.pendingActions.poll()) != null) {
+        Permissive.events.record(EventRecorder.DEQUEUE, action, lane.id, lane.pendingActions.size());
+        Permissive.metrics.onActionDequeued(action, SystemClock.uptimeMillis() - action.enqueueTime);
+        if (action instanceof Permissive.Request) {
+          final Permissive.Request request = (Permissive.Request) action;
+          if (request.coalesced) {
+            // the request was already answered with a coalesced dialog, so only a rationale is left
+            request.coalesced = false;
+            if (showRationaleForRequest(lane, request)) {
+              return action;
+            }
+          } else if (queueBehindFragmentLane(lane, request)) {
+            return null;
+          } else if (requestPermissions(lane, request)) {
+            return action;
+          }
+        }
+        finalizeAction(action);
+      }
+      return null;
+    }
+
+    /**
+     * Moves pending requests for the same activity into the current request,
+     * so all of them are asked with a single permissions dialog.
+     * Requests scoped to another owner are not merged, because their results follow the lifecycle
+     * of their owners, not of the current request.
+     *
+     * @return All permissions to be asked.
+     */
+    private String[] coalescePendingRequests(Lane lane, Permissive.Request current, String[] permissionsToAsk) {
+      final Activity activity = current.getContext();
+      final Activity owner = getScopeOwner(current);
+      List<String> coalescedPermissions = null;
+      PermissionSet askedSet = null;
+      final Iterator<Permissive.Action> iterator = lane.pendingActions.iterator();
+      while (iterator.hasNext()) {
+        final Permissive.Action action = iterator.next();
+        if (!(action instanceof Permissive.Request)) {
+          continue;
         }
-        if (action instanceof Permissive.Request
-            && requestPermissions((Permissive.Request) action)) {
-          return action;
+        final Permissive.Request request = (Permissive.Request) action;
+        if (request.getContext() != activity || request.rebuild || getScopeOwner(request) != owner) {
+          continue;
+        }
+        final String[] refusedPermissions = request.getRefusedPermissions(activity);
+        if (request.shouldDisplayRationaleFirst()
+            && !Permissive.permissionGroups.areGrantedByGroup(activity, refusedPermissions)) {
+          continue;
+        }
+        iterator.remove();
+        lane.coalescedRequests.add(request);
+        if (coalescedPermissions == null) {
+          coalescedPermissions = new ArrayList<>(Arrays.asList(permissionsToAsk));
+          askedSet = PermissionSet.of(permissionsToAsk);
+        }
+        for (String permission : refusedPermissions) {
+          if (!askedSet.contains(permission)) {
+            askedSet = askedSet.union(PermissionSet.of(permission));
+            coalescedPermissions.add(permission);
+          }
+        }
+      }
+      if (coalescedPermissions == null) {
+        return permissionsToAsk;
+      }
+      for (Permissive.Request request : lane.coalescedRequests) {
+        Permissive.events.record(EventRecorder.COALESCE, request, lane.id, lane.coalescedRequests.size());
+      }
+      return coalescedPermissions.toArray(new String[coalescedPermissions.size()]);
+    }
+
+    private Activity getScopeOwner(Permissive.Action action) {
+      final LifecycleScopes.Scope scope = action.scope;
+      return scope != null && scope.ownerRef != null ? scope.ownerRef.get() : null;
+    }
+
+    /**
+     * Fans out the result of a coalesced dialog to the requests, that were merged into the current one.
+     * Requests, that are fully granted or canceled, are finalized immediately. The rest is moved
+     * back to the front of the queue, so they can display own rationales.
+     */
+    private void releaseCoalescedRequests(Lane lane, boolean canceled) {
+      for (int i = lane.coalescedRequests.size() - 1; i >= 0; --i) {
+        final Permissive.Request request = lane.coalescedRequests.get(i);
+        final Activity activity = request.getContext();
+        if (canceled || activity == null || request.getRefusedPermissions(activity).length == 0) {
+          finalizeAction(request);
         } else {
-          finalizeAction(action);
+          request.coalesced = true;
+          lane.pendingActions.addFirst(request);
         }
       }
-      return null;
+      lane.coalescedRequests.clear();
     }
   }
 
   private final MessageHandler callbackHandler = new MessageHandler();
   private final Handler handler = new Handler(Looper.getMainLooper(), callbackHandler);
 
+  private volatile long coalescingWindow;
+  private volatile boolean fastPathEnabled;
+  private volatile long defaultTimeout;
+
+  /**
+   * @return Pending requests of the Activity, which are scoped to it, in order of execution.
+   * Requests coalesced into the current dialog come first, because they are answered before the rest.
+   */
+  List<Permissive.Request> getScopedPendingRequests(Activity activity) {
+    final Lane lane = callbackHandler.findLane(activity);
+    if (lane == null) {
+      return Collections.emptyList();
+    }
+    final List<Permissive.Request> requests = new ArrayList<>();
+    addScopedRequests(activity, lane.coalescedRequests, requests);
+    addScopedRequests(activity, lane.pendingActions, requests);
+    return requests;
+  }
+
+  private static void addScopedRequests(Activity activity, List<? extends Permissive.Action> actions,
+                                        List<Permissive.Request> requests) {
+    for (Permissive.Action action : actions) {
+      final LifecycleScopes.Scope scope = action.scope;
+      if (action instanceof Permissive.Request && !((Permissive.Request) action).rebuild
+          && scope != null && scope.ownerRef != null && scope.ownerRef.get() == activity) {
+        requests.add((Permissive.Request) action);
+      }
+    }
+  }
+
+  /**
+   * Delivers a result of a permissions request asked directly with the Activity.
+   *
+   * @see PermissiveDispatcher
+   */
+  void onDirectResult(Activity activity, String[] permissions, int[] grantResults) {
+    final Lane lane = callbackHandler.findDirectLane(activity);
+    if (lane == null) {
+      Log.w(TAG, "No request waits for the result: " + Arrays.toString(permissions));
+      return;
+    }
+    Permissive.denials.onPermissionsResult(activity, permissions, grantResults, lane.rationaleBefore);
+    Permissive.metrics.onPermissionsDialogFinished(permissions, SystemClock.uptimeMillis() - lane.directRequestTime);
+    clearDirectRequest(lane);
+    handler.obtainMessage(PERMISSIONS_RESULT, lane.currentAction.id, lane.id,
+        new RequestPermissionsResult(permissions, grantResults)).sendToTarget();
+  }
+
+  /**
+   * Cancels a direct request of the Activity, which is finished, so the result will never arrive.
+   */
+  void onDirectHostDestroyed(Activity activity) {
+    final Lane lane = callbackHandler.findLane(activity);
+    if (lane != null && lane.directRequestTime > 0) {
+      clearDirectRequest(lane);
+      handler.obtainMessage(CANCEL_REQUEST, lane.currentAction.id, lane.id, null).sendToTarget();
+    }
+  }
+
+  /**
+   * @return A direct request waiting for its result in the Activity, or null.
+   */
+  DirectRequest getDirectRequest(Activity activity) {
+    final Lane lane = callbackHandler.findDirectLane(activity);
+    return lane != null ? new DirectRequest(lane.id, lane.directPermissions, lane.rationaleBefore) : null;
+  }
+
+  /**
+   * Binds a direct request to the Activity recreated after a configuration change.
+   * It's called on the main thread, before the result can be delivered to the new instance.
+   *
+   * @return {@code true} if the lane still waits for the result, otherwise {@code false}.
+   */
+  boolean rebindDirectRequest(Activity activity, int laneId) {
+    final Lane lane = callbackHandler.findLane(laneId);
+    if (lane == null || lane.directRequestTime == 0) {
+      return false;
+    }
+    callbackHandler.restoreActivity(lane, activity);
+    callbackHandler.publishDepths();
+    return true;
+  }
+
+  /**
+   * Rebuilds a direct request, which was lost with the killed process, while its dialog is restored by the system.
+   * The rebuilt request waits for the result in a new lane of the Activity. It's called on the main thread.
+   *
+   * @return The rebuilt request, or null if the Activity already executes another action.
+   */
+  Permissive.Request rebuildDirectRequest(Activity activity, String[] permissions, String[] rationaleBefore) {
+    final Lane existing = callbackHandler.findDirectLane(activity);
+    if (existing != null) {
+      return existing.currentAction instanceof Permissive.Request ? (Permissive.Request) existing.currentAction : null;
+    }
+    final Lane lane = callbackHandler.obtainLane(activity);
+    if (!lane.isIdle()) {
+      return null;
+    }
+    final Permissive.Request request = new Permissive.Request(true, permissions);
+    request.updateActivityRef(activity);
+    beginActionTrace(request);
+    lane.currentAction = request;
+    lane.directPermissions = permissions;
+    lane.rationaleBefore = rationaleBefore;
+    lane.directRequestTime = SystemClock.uptimeMillis();
+    lane.publishDepth();
+    return request;
+  }
+
+  private static void clearDirectRequest(Lane lane) {
+    lane.directRequestTime = 0;
+    lane.directPermissions = null;
+    lane.rationaleBefore = null;
+  }
+
+  /**
+   * A snapshot of a direct request, which is saved with the state of its Activity.
+   */
+  static final class DirectRequest {
+    final int laneId;
+    final String[] permissions;
+    final String[] rationaleBefore;
+
+    DirectRequest(int laneId, String[] permissions, String[] rationaleBefore) {
+      this.laneId = laneId;
+      this.permissions = permissions;
+      this.rationaleBefore = rationaleBefore;
+    }
+  }
+
+  /**
+   * Lanes are modified only on the handler's thread, so other threads read depths published
+   * after the last processed message.
+   */
   boolean hasPendingActions() {
-    return callbackHandler.currentAction != null || !callbackHandler.pendingActions.isEmpty();
+    for (Lane lane : callbackHandler.lanes) {
+      if (depthOf(lane) > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param context A context used to execute actions.
+   * @return A number of actions and requests in the lane of the given context, including the current one.
+   * @see #hasPendingActions()
+   */
+  int getPendingActionsCount(Context context) {
+    final Lane lane = callbackHandler.findLane(context);
+    return lane != null ? depthOf(lane) : 0;
+  }
+
+  private int depthOf(Lane lane) {
+    return Looper.myLooper() == handler.getLooper() ? lane.depth() : lane.publishedDepth;
+  }
+
+  void setCoalescingWindow(long millis) {
+    coalescingWindow = millis;
+  }
+
+  void setFastPathEnabled(boolean enabled) {
+    fastPathEnabled = enabled;
+  }
+
+  void setDefaultTimeout(long millis) {
+    defaultTimeout = millis;
+  }
+
+  /**
+   * Removes the action from the queue, if it's still pending. It's safe to call from any thread.
+   */
+  void cancelAction(Permissive.Action action) {
+    handler.obtainMessage(CANCEL_ACTION, action).sendToTarget();
   }
 
   void enqueueAction(Permissive.Action action) {
+    beginActionTrace(action);
     handler.obtainMessage(REQUEST_PERMISSIONS, action).sendToTarget();
   }
 
-  private boolean requestPermissions(Permissive.Request request) {
+  private boolean isIdle(Context context) {
+    if (getPendingActionsCount(context) > 0 || handler.hasMessages(REQUEST_PERMISSIONS)) {
+      return false;
+    }
+    // a recreated Activity is not bound yet to the lane, which waits for its retained fragment
+    return !(context instanceof Activity) || callbackHandler.findFragmentLane((Activity) context) == null;
+  }
+
+  /**
+   * Completes the action on the calling thread, when the result is already known (all its permissions
+   * are granted, or the rest can't be granted, because they are not declared in the manifest
+   * or the system is older than M, so it never asks for permissions)
+   * and nothing is waiting in the queue, so the order of execution is preserved.
+   * Lanes are modified only by the handler, so the queue is checked only on its thread.
+   * Otherwise, the lane could become busy right after the check.
+   *
+   * @return {@code true} when the action was completed, otherwise it must be enqueued.
+   */
+  boolean executeImmediately(Permissive.Action action) {
+    if (!fastPathEnabled || Looper.myLooper() != handler.getLooper() || !isIdle(action.getContext())) {
+      return false;
+    }
+    final Context context = action.getContext();
+    if (context == null) {
+      return false;
+    }
+    final RequestPermissionsResult result = getPermissionsResult(context, action.getPermissions());
+    if (!isFinal(result)) {
+      return false;
+    }
+    beginActionTrace(action);
+    fireActionCallbacks(action, result);
+    return true;
+  }
+
+  /**
+   * Checks permissions of the action on its executor. When the result can't change anymore,
+   * because all permissions are granted, or the rest can never be granted, the action is completed there,
+   * so it never waits for the main thread. Otherwise, it's enqueued, to wait for pending requests or ask itself.
+   */
+  void executeOnExecutor(final Permissive.Action action) {
+    action.executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final Context context = action.getContext();
+        final RequestPermissionsResult result = context != null ? getPermissionsResult(context, action.getPermissions()) : null;
+        if (result != null && isFinal(result)) {
+          beginActionTrace(action);
+          fireActionCallbacks(action, result);
+        } else {
+          enqueueAction(action);
+        }
+      }
+    });
+  }
+
+  /**
+   * @return {@code true} if no request can change the result.
+   */
+  private static boolean isFinal(RequestPermissionsResult result) {
+    return result.areAllGranted() || Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+        || areUndeclared(result.refusedPermissions());
+  }
+
+  private static boolean areUndeclared(String[] permissions) {
+    for (String permission : permissions) {
+      if (!Permissive.manifest.isUndeclared(permission)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean requestPermissions(Lane lane, Permissive.Request request) {
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
       return false;
     }
@@ -185,33 +817,66 @@ class PermissiveHandler {
     if (!isValidActivity(activity)) {
       return false;
     }
-    if(DEBUG) {
-      Log.v(TAG, "requestPermissions(): " + request);
+    // undeclared and permanently denied permissions are denied without a dialog, so never ask for them
+    final String[] declaredPermissions = Permissive.manifest.filterDeclared(activity, request.getRefusedPermissions(activity));
+    final String[] permissionsToAsk = Permissive.denials.filterAskable(activity, declaredPermissions);
+    if (permissionsToAsk.length == 0 && declaredPermissions.length > 0) {
+      // all of them are denied permanently, so the rationale is the only way to tell the user about Settings
+      return showRationaleForRequest(lane, request);
     }
-
-    final String[] permissionsToAsk = request.getRefusedPermissions(activity);
     if (permissionsToAsk.length > 0) {
-      if (request.shouldDisplayRationaleFirst() && showRationaleForRequest(request)) {
+      // a rationale is useless, when the system grants all permissions by their groups without asking
+      if (request.shouldDisplayRationaleFirst()
+          && !Permissive.permissionGroups.areGrantedByGroup(activity, permissionsToAsk)
+          && showRationaleForRequest(lane, request)) {
         return true;
       }
-      askForPermissions(activity, permissionsToAsk);
+      Permissive.events.record(EventRecorder.ASK_PERMISSIONS, request, lane.id, permissionsToAsk.length);
+      final String[] coalescedPermissions = callbackHandler.coalescePendingRequests(lane, request, permissionsToAsk);
+      askForPermissions(lane, request, Permissive.permissionGroups.groupSiblings(activity,
+          coalescedPermissions != permissionsToAsk
+              ? Permissive.denials.filterAskable(activity, Permissive.manifest.filterDeclared(activity, coalescedPermissions))
+              : permissionsToAsk));
+      startStageTimeout(lane, request);
       return true;
     }
     return false;
   }
 
-  private void finalizeAction(Permissive.Action action) {
+  private void finalizeAction(final Permissive.Action action) {
+    final Executor executor = action.executor;
+    if (executor != null) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          completeAction(action);
+        }
+      });
+    } else {
+      completeAction(action);
+    }
+  }
+
+  private void completeAction(Permissive.Action action) {
     Context context = action.getContext();
-    if (context != null) {
-      final int[] grants = getPermissionGrants(context, action.getPermissions());
-      fireActionCallbacks(action, new RequestPermissionsResult(action.getPermissions(), grants));
+    if (context == null) {
+      if (action.future != null) {
+        action.future.abandon();
+      }
+      final LifecycleScopes.Scope scope = action.scope;
+      if (scope != null) {
+        Permissive.scopes.release(scope);
+      }
+      endActionTrace(action);
+    } else {
+      fireActionCallbacks(action, getPermissionsResult(context, action.getPermissions()));
     }
   }
 
-  private boolean processPermissionsResultFor(Permissive.Action action, RequestPermissionsResult result) {
+  private boolean processPermissionsResultFor(Lane lane, Permissive.Action action, RequestPermissionsResult result) {
     if (action instanceof Permissive.Request) {
       Permissive.Request request = (Permissive.Request) action;
-      if (result.hasAnyRefusedPermissions() && showRationaleForRequest(request)) {
+      if (result.hasAnyRefusedPermissions() && showRationaleForRequest(lane, request)) {
         return true;
       }
     } else {
@@ -221,39 +886,111 @@ class PermissiveHandler {
     return false;
   }
 
-  private boolean showRationaleForRequest(Permissive.Request request) {
+  private boolean showRationaleForRequest(Lane lane, Permissive.Request request) {
     Activity activity = request.getContext();
     if (null == activity) {
       return false;
     }
     final String[] rationalePermissions = Permissive.getPermissionsRequiringRationale(activity, request.getPermissions());
     if (request.shouldDisplayRationale()) {
-      final PermissiveMessenger messenger = new PermissiveMessenger(handler, request.getPermissions());
-      return request.showRationale(rationalePermissions, messenger) && !request.rebuild;
+      final PermissiveMessenger messenger = new PermissiveMessenger(handler, lane.id, request.id, request.getPermissions());
+      Permissive.events.record(EventRecorder.SHOW_RATIONALE, request, lane.id, rationalePermissions.length);
+      if (request.showRationale(rationalePermissions, messenger) && !request.rebuild) {
+        lane.rationaleStartTime = SystemClock.uptimeMillis();
+        startStageTimeout(lane, request);
+        return true;
+      }
     }
     return false;
   }
 
-  private void fireActionCallbacks(Permissive.Action action, RequestPermissionsResult result) {
+  private void finishRationale(Lane lane, Permissive.Action action) {
+    if (lane.rationaleStartTime > 0) {
+      if (action instanceof Permissive.Request) {
+        Permissive.metrics.onRationaleFinished((Permissive.Request) action, SystemClock.uptimeMillis() - lane.rationaleStartTime);
+      }
+      lane.rationaleStartTime = 0;
+    }
+  }
+
+  /**
+   * Starts a watchdog for the current stage (a rationale or a permissions dialog) of the request.
+   * When the stage is not finished in time, then the request is canceled, so it won't block the lane forever.
+   */
+  private void startStageTimeout(Lane lane, Permissive.Request request) {
+    handler.removeMessages(STAGE_TIMEOUT, lane);
+    final long timeout = request.getTimeout() > 0 ? request.getTimeout() : defaultTimeout;
+    if (timeout > 0) {
+      handler.sendMessageDelayed(handler.obtainMessage(STAGE_TIMEOUT, (int) Math.min(timeout, Integer.MAX_VALUE), lane.id, lane), timeout);
+    }
+  }
+
+  /**
+   * Completes the action with its result. Every path, that finishes an action with a result,
+   * ends here, so the outcome is recorded exactly once.
+   */
+  static void fireActionCallbacks(Permissive.Action action, RequestPermissionsResult result) {
     if (action != null) {
-      if (result.grantedPermissions.length > 0) {
-        action.firePermissionsGrantedListener(result.grantedPermissions);
+      recordOutcome(action, result);
+      final PermissiveTracer tracer = Permissive.tracer;
+      tracer.beginSection(TRACE_FIRE_CALLBACKS);
+      // a scoped action, which is detached from its owner, keeps the result for a reattached listener
+      final LifecycleScopes.Scope scope = action.scope;
+      final boolean deliver = scope == null || Permissive.scopes.deliver(scope, result);
+      try {
+        if (deliver) {
+          // arrays of permissions are built only for registered listeners
+          if (result.getGrantedCount() > 0 && action.getPermissionsGrantedListener() != null) {
+            action.firePermissionsGrantedListener(result.grantedPermissions());
+          }
+          if (result.getRefusedCount() > 0 && action.getPermissionsRefusedListener() != null) {
+            action.firePermissionsRefusedListener(result.refusedPermissions());
+          }
+          if (action.getPermissionsResultListener() != null) {
+            action.firePermissionsResultListener(result.grantedPermissions(), result.refusedPermissions());
+          }
+        }
+        if (action.future != null) {
+          action.future.complete(result);
+        }
+      } finally {
+        tracer.endSection();
+        endActionTrace(action);
+        if (deliver && scope != null) {
+          Permissive.scopes.release(scope);
+        }
       }
-      if (result.refusedPermissions.length > 0) {
-        action.firePermissionsRefusedListener(result.refusedPermissions);
+    }
+  }
+
+  private static void recordOutcome(Permissive.Action action, RequestPermissionsResult result) {
+    Permissive.events.record(EventRecorder.FINALIZE, action, 0, result.getGrantedCount());
+    final PermissiveMetrics metrics = Permissive.metrics;
+    if (metrics != PermissiveMetrics.NONE) {
+      final String[] permissions = action.getPermissions();
+      for (int i = 0; i < permissions.length; ++i) {
+        metrics.onPermissionOutcome(action, permissions[i], result.isGranted(i));
       }
-      action.firePermissionsResultListener(result.grantedPermissions, result.refusedPermissions);
     }
   }
 
-  private static int[] getPermissionGrants(Context context, String[] permissions) {
-    final int[] grantResults = new int[permissions.length];
+  private static void beginActionTrace(Permissive.Action action) {
+    final PermissiveTracer tracer = Permissive.tracer;
+    if (tracer != PermissiveTracer.NONE) {
+      action.traceCookie = traceCookies.incrementAndGet();
+      tracer.beginAsyncSection(TRACE_ACTION, action.traceCookie);
+    }
+  }
 
-    final int permissionCount = permissions.length;
-    for (int i = 0; i < permissionCount; i++) {
-      grantResults[i] = Permissive.checkPermissionInt(context, permissions[i]);
+  private static void endActionTrace(Permissive.Action action) {
+    if (action.traceCookie != 0) {
+      Permissive.tracer.endAsyncSection(TRACE_ACTION, action.traceCookie);
+      action.traceCookie = 0;
     }
-    return grantResults;
+  }
+
+  private static RequestPermissionsResult getPermissionsResult(Context context, String[] permissions) {
+    return new RequestPermissionsResult(permissions, Permissive.permissionCache.checkGrantVector(context, permissions));
   }
 
   @TargetApi(Build.VERSION_CODES.M)
@@ -262,17 +999,33 @@ class PermissiveHandler {
   }
 
   @TargetApi(Build.VERSION_CODES.M)
-  private void askForPermissions(final Activity activity, final String... permissions) {
-    final FragmentManager fm = activity.getFragmentManager();
-    PermissiveFragment frag = (PermissiveFragment) fm.findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
-    if (frag != null) {
-      Log.w(TAG, "A previous request fragment still exists!");
-      frag.setMessenger(new Messenger(handler));
-      return;
+  private void askForPermissions(Lane lane, Permissive.Request request, final String... permissions) {
+    final Activity activity = request.getContext();
+    final PermissiveTracer tracer = Permissive.tracer;
+    tracer.beginSection(TRACE_ASK_FOR_PERMISSIONS);
+    try {
+      if (PermissiveDispatcher.canRequestDirectly(activity)) {
+        // the host Activity forwards the result, so no fragment is needed
+        lane.directPermissions = permissions;
+        lane.rationaleBefore = Permissive.denials.expectingRationale(activity, permissions);
+        lane.directRequestTime = SystemClock.uptimeMillis();
+        PermissiveDispatcher.requestPermissions(activity, permissions);
+        return;
+      }
+      final FragmentManager fm = activity.getFragmentManager();
+      PermissiveFragment frag = (PermissiveFragment) fm.findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+      if (frag != null) {
+        // a fragment of another live lane is never reached here, so it's either own or left by a killed process
+        Log.w(TAG, "A previous request fragment still exists!");
+        frag.setMessenger(new Messenger(handler), lane.id, request.id);
+        return;
+      }
+      fm.beginTransaction()
+          .add(PermissiveFragment.create(permissions, handler, lane.id, request.id), Permissive.PERMISSIVE_FRAGMENT_TAG)
+          .commitAllowingStateLoss();
+    } finally {
+      tracer.endSection();
     }
-    fm.beginTransaction()
-        .add(PermissiveFragment.create(permissions, handler), Permissive.PERMISSIVE_FRAGMENT_TAG)
-        .commitAllowingStateLoss();
   }
 
 }
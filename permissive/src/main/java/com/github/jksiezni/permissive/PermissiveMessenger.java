@@ -31,7 +31,8 @@ import android.util.Log;
  * <p>When a {@link Rationale} is displayed, then the processing of other actions and requests are stopped,
  * until a current request is canceled or repeated. As a developer you have to carefully design the flow
  * of your rationale, so you won't omit a required call to {@link #repeatRequest()} or {@link #cancelRequest()}.
- * Otherwise, a deadlock in your App may occur.
+ * Otherwise, a deadlock in your App may occur, unless a timeout is set with {@link Permissive.Request#withTimeout(long)}
+ * or {@link Permissive#setDefaultRequestTimeout(long)}.
  * </p>
  *
  * <p>Fortunately, the class provides useful methods, that will help you to maintain control over request,
@@ -58,6 +59,9 @@ public class PermissiveMessenger implements Parcelable {
   };
 
   private final Messenger messenger;
+  private final int laneId;
+  /* an id of the request, so messages sent after the request was finished are dropped */
+  private final int requestId;
   private final String[] permissions;
 
   private boolean messageSent;
@@ -66,15 +70,21 @@ public class PermissiveMessenger implements Parcelable {
    * Constructs the messenger for given requested permissions.
    *
    * @param target A permissive handler, where all messages are sent.
+   * @param laneId An id of the handler's lane, which processes the request.
+   * @param requestId An id of the request.
    * @param permissions  Requested permissions.
    */
-  PermissiveMessenger(Handler target, String[] permissions) {
+  PermissiveMessenger(Handler target, int laneId, int requestId, String[] permissions) {
     this.messenger = new Messenger(target);
+    this.laneId = laneId;
+    this.requestId = requestId;
     this.permissions = permissions;
   }
 
   private PermissiveMessenger(Parcel in) {
     this.messenger = in.readParcelable(getClass().getClassLoader());
+    this.laneId = in.readInt();
+    this.requestId = in.readInt();
     this.permissions = in.createStringArray();
     this.messageSent = in.readInt() > 0;
   }
@@ -87,6 +97,8 @@ public class PermissiveMessenger implements Parcelable {
   @Override
   public void writeToParcel(Parcel dest, int flags) {
     dest.writeParcelable(messenger, flags);
+    dest.writeInt(laneId);
+    dest.writeInt(requestId);
     dest.writeStringArray(permissions);
     dest.writeInt(messageSent ? 1 : 0);
   }
@@ -122,8 +134,11 @@ public class PermissiveMessenger implements Parcelable {
     try {
       Message msg = Message.obtain();
       msg.what = PermissiveHandler.REPEAT_REQUEST;
-      msg.arg1 = showRationale ? 1 : 0;
+      msg.arg1 = requestId;
+      msg.arg2 = laneId;
+      msg.obj = showRationale;
       messenger.send(msg);
+      Permissive.events.record(EventRecorder.REPEAT_SENT, requestId, laneId, showRationale ? 1 : 0, null);
       messageSent = true;
       return true;
     } catch (RemoteException e) {
@@ -149,7 +164,10 @@ public class PermissiveMessenger implements Parcelable {
     try {
       Message msg = Message.obtain();
       msg.what = PermissiveHandler.CANCEL_REQUEST;
+      msg.arg1 = requestId;
+      msg.arg2 = laneId;
       messenger.send(msg);
+      Permissive.events.record(EventRecorder.CANCEL_SENT, requestId, laneId, 0, null);
       messageSent = true;
       return true;
     } catch (RemoteException e) {
@@ -173,6 +191,8 @@ public class PermissiveMessenger implements Parcelable {
       Message msg = Message.obtain();
       msg.what = PermissiveHandler.UPDATE_LISTENER;
       msg.obj = listener;
+      msg.arg1 = requestId;
+      msg.arg2 = laneId;
       messenger.send(msg);
       return true;
     } catch (Exception e) {
@@ -197,6 +217,7 @@ public class PermissiveMessenger implements Parcelable {
       Message msg = Message.obtain();
       msg.what = PermissiveHandler.RESTORE_ACTIVITY;
       msg.obj = activity;
+      msg.arg2 = laneId;
       messenger.send(msg);
       return true;
     } catch (Exception e) {
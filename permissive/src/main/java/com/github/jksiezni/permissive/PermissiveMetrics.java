@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+/**
+ * A listener for metrics of permissions handling, like queue depth or timings of requests.
+ *
+ * <p>Override only methods you are interested in, and register the listener with
+ * {@link Permissive#setMetrics(PermissiveMetrics)}. By default, the {@link #NONE} instance is used,
+ * which ignores all events.</p>
+ *
+ * <p>Most events are reported on the main thread, but events for actions executed on an
+ * {@link java.util.concurrent.Executor} are reported on that executor. All durations are measured
+ * in milliseconds with {@link android.os.SystemClock#uptimeMillis()}. Keep implementations fast,
+ * because they are called while processing permissions.</p>
+ */
+public abstract class PermissiveMetrics {
+
+  /**
+   * A default instance, that ignores all events.
+   */
+  public static final PermissiveMetrics NONE = new PermissiveMetrics() {};
+
+  /**
+   * Called when an action or a request is added to the queue.
+   *
+   * @param action The enqueued action.
+   * @param queueDepth A number of actions in the queue of the action, including the current one.
+   */
+  public void onActionEnqueued(Permissive.Action action, int queueDepth) {
+  }
+
+  /**
+   * Called when an action or a request leaves the queue and starts to be processed.
+   *
+   * @param action The processed action.
+   * @param queuedMillis Time spent by the action in the queue.
+   */
+  public void onActionDequeued(Permissive.Action action, long queuedMillis) {
+  }
+
+  /**
+   * Called when the system permissions dialog is answered.
+   *
+   * @param permissions The requested permissions.
+   * @param durationMillis Time from asking for permissions to receiving the result.
+   */
+  public void onPermissionsDialogFinished(String[] permissions, long durationMillis) {
+  }
+
+  /**
+   * Called when a rationale is finished, by repeating or canceling the request.
+   *
+   * @param request The request, which displayed the rationale.
+   * @param durationMillis Time spent in the rationale.
+   */
+  public void onRationaleFinished(Permissive.Request request, long durationMillis) {
+  }
+
+  /**
+   * Called when a rationale or a permissions dialog of a request is not finished in time,
+   * so the request is canceled.
+   *
+   * @param request The canceled request.
+   * @param timeoutMillis The timeout of the stalled stage.
+   */
+  public void onStageTimeout(Permissive.Request request, long timeoutMillis) {
+  }
+
+  /**
+   * Called for each permission of a finished action or request.
+   *
+   * @param action The finished action.
+   * @param permission The permission.
+   * @param granted {@code true} when the permission was granted.
+   */
+  public void onPermissionOutcome(Permissive.Action action, String permission, boolean granted) {
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * A tracer for state transitions of permissions handling.
+ *
+ * <p>Sections are reported around processing of each internal message, draining the queue,
+ * dispatching listeners and adding the request fragment. Each action is also traced as
+ * an asynchronous slice from its execution until its listeners are called, identified by a unique cookie.</p>
+ *
+ * <p>Register a tracer with {@link Permissive#setTracer(PermissiveTracer)}. Use {@link #SYSTEM}
+ * to see sections in systrace or Perfetto, or override methods to route them to your own tracing backend.
+ * By default, the {@link #NONE} instance is used, which ignores all events.</p>
+ */
+public abstract class PermissiveTracer {
+
+  /**
+   * A default instance, that ignores all events.
+   */
+  public static final PermissiveTracer NONE = new PermissiveTracer() {};
+
+  /**
+   * An instance, that writes sections to the system trace with {@link Trace}, on Android 4.3 or newer.
+   * Asynchronous sections and counters are not supported by the platform API this library is built against,
+   * so they are ignored.
+   */
+  public static final PermissiveTracer SYSTEM = new SystemTracer();
+
+  /**
+   * Begins a section on the current thread.
+   *
+   * @param name A name of the section.
+   */
+  public void beginSection(String name) {
+  }
+
+  /**
+   * Ends the most recent section on the current thread.
+   */
+  public void endSection() {
+  }
+
+  /**
+   * Begins an asynchronous section, which may be ended on another thread.
+   *
+   * @param name A name of the section.
+   * @param cookie A unique identifier of the section.
+   */
+  public void beginAsyncSection(String name, int cookie) {
+  }
+
+  /**
+   * Ends an asynchronous section.
+   *
+   * @param name A name of the section.
+   * @param cookie A unique identifier of the section.
+   */
+  public void endAsyncSection(String name, int cookie) {
+  }
+
+  /**
+   * Updates a counter.
+   *
+   * @param name A name of the counter.
+   * @param value A new value.
+   */
+  public void setCounter(String name, long value) {
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private static final class SystemTracer extends PermissiveTracer {
+
+    @Override
+    public void beginSection(String name) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        Trace.beginSection(name);
+      }
+    }
+
+    @Override
+    public void endSection() {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        Trace.endSection();
+      }
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.github.jksiezni.permissive;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of global rationales, that can be registered for a permission,
+ * a permission group or a prefix of permission names.
+ *
+ * <p>Registrations are rare, so each of them publishes a new immutable snapshot,
+ * and lookups never take a lock. Each snapshot memoizes resolved permissions,
+ * so every permission is matched against groups and prefixes only once.</p>
+ */
+final class RationaleRegistry {
+
+  /* a marker of permissions without any rationale */
+  private static final Object NO_RATIONALE = new Object();
+  private static final class Snapshot {
+    static final Snapshot EMPTY = new Snapshot(new HashMap<String, Rationale>(), new HashMap<String, Rationale>(),
+        new String[0], new Rationale[0]);
+
+    final Map<String, Rationale> byPermission;
+    final Map<String, Rationale> byGroup;
+    /* prefixes sorted from the longest one, so the most specific prefix wins */
+    final String[] prefixes;
+    final Rationale[] prefixRationales;
+    final ConcurrentHashMap<String, Object> resolved = new ConcurrentHashMap<>();
+
+    Snapshot(Map<String, Rationale> byPermission, Map<String, Rationale> byGroup,
+             String[] prefixes, Rationale[] prefixRationales) {
+      this.byPermission = byPermission;
+      this.byGroup = byGroup;
+      this.prefixes = prefixes;
+      this.prefixRationales = prefixRationales;
+    }
+  }
+
+  private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+  synchronized void registerForPermission(String permission, Rationale rationale) {
+    final Snapshot current = snapshot;
+    final Map<String, Rationale> byPermission = new HashMap<>(current.byPermission);
+    put(byPermission, permission, rationale);
+    snapshot = new Snapshot(byPermission, current.byGroup, current.prefixes, current.prefixRationales);
+  }
+
+  synchronized void registerForGroup(String group, Rationale rationale) {
+    final Snapshot current = snapshot;
+    final Map<String, Rationale> byGroup = new HashMap<>(current.byGroup);
+    put(byGroup, group, rationale);
+    snapshot = new Snapshot(current.byPermission, byGroup, current.prefixes, current.prefixRationales);
+  }
+
+  synchronized void registerForPrefix(String prefix, Rationale rationale) {
+    final Snapshot current = snapshot;
+    final Map<String, Rationale> byPrefix = new HashMap<>(current.prefixes.length + 1);
+    for (int i = 0; i < current.prefixes.length; ++i) {
+      byPrefix.put(current.prefixes[i], current.prefixRationales[i]);
+    }
+    put(byPrefix, prefix, rationale);
+    final String[] prefixes = byPrefix.keySet().toArray(new String[byPrefix.size()]);
+    Arrays.sort(prefixes, new Comparator<String>() {
+      @Override
+      public int compare(String lhs, String rhs) {
+        return rhs.length() - lhs.length();
+      }
+    });
+    final Rationale[] prefixRationales = new Rationale[prefixes.length];
+    for (int i = 0; i < prefixes.length; ++i) {
+      prefixRationales[i] = byPrefix.get(prefixes[i]);
+    }
+    snapshot = new Snapshot(current.byPermission, current.byGroup, prefixes, prefixRationales);
+  }
+
+  private static void put(Map<String, Rationale> map, String key, Rationale rationale) {
+    if (rationale != null) {
+      map.put(key, rationale);
+    } else {
+      map.remove(key);
+    }
+  }
+
+  /**
+   * Finds a rationale for the permission. A rationale registered for the permission wins over
+   * a rationale of its group, which wins over a rationale of the longest matching prefix.
+   *
+   * @param context A context used to find a group of the permission.
+   * @param permission A permission.
+   * @return A rationale, or {@code null} if none is registered.
+   */
+  Rationale resolve(Context context, String permission) {
+    return resolve(snapshot, context, permission);
+  }
+
+  /**
+   * Finds rationales for all given permissions, using the same snapshot of the registry.
+   *
+   * @param context A context used to find groups of permissions.
+   * @param permissions Permissions.
+   * @return An array of rationales (or {@code null} elements), in the same order as given permissions.
+   */
+  Rationale[] resolveAll(Context context, String[] permissions) {
+    final Snapshot current = snapshot;
+    final Rationale[] rationales = new Rationale[permissions.length];
+    for (int i = 0; i < permissions.length; ++i) {
+      rationales[i] = resolve(current, context, permissions[i]);
+    }
+    return rationales;
+  }
+
+  private static Rationale resolve(Snapshot snapshot, Context context, String permission) {
+    Object rationale = snapshot.resolved.get(permission);
+    if (rationale == null) {
+      rationale = match(snapshot, context, permission);
+      snapshot.resolved.put(permission, rationale);
+    }
+    return rationale != NO_RATIONALE ? (Rationale) rationale : null;
+  }
+
+  private static Object match(Snapshot snapshot, Context context, String permission) {
+    Rationale rationale = snapshot.byPermission.get(permission);
+    if (rationale != null) {
+      return rationale;
+    }
+    if (!snapshot.byGroup.isEmpty()) {
+      final String group = Permissive.permissionGroups.groupOf(context, permission);
+      if (group != null && (rationale = snapshot.byGroup.get(group)) != null) {
+        return rationale;
+      }
+    }
+    for (int i = 0; i < snapshot.prefixes.length; ++i) {
+      if (permission.startsWith(snapshot.prefixes[i])) {
+        return snapshot.prefixRationales[i];
+      }
+    }
+    return NO_RATIONALE;
+  }
+}
@@ -18,34 +18,127 @@ package com.github.jksiezni.permissive;
 
 import android.content.pm.PackageManager;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
+ * A result of an {@link Permissive.Action} or {@link Permissive.Request},
+ * which splits permissions into granted and refused ones.
  *
+ * <p>The result is stored as a compact grant vector, with one bit per permission.
+ * Arrays of granted or refused permissions are built only when they are needed,
+ * and then shared by all listeners.</p>
  */
 class RequestPermissionsResult {
 
-  final String[] grantedPermissions;
-  final String[] refusedPermissions;
+  private final String[] permissions;
+  /* bit i is set, when permissions[i] is granted */
+  private final long[] grants;
+  private final int grantedCount;
+
+  private volatile String[] grantedPermissions;
+  private volatile String[] refusedPermissions;
 
   RequestPermissionsResult(String[] permissions, int[] grantResults) {
+    this(permissions, toGrantVector(permissions, grantResults));
+  }
+
+  RequestPermissionsResult(String[] permissions, long[] grants) {
+    this.permissions = permissions;
+    this.grants = grants;
+    int count = 0;
+    for (long word : grants) {
+      count += Long.bitCount(word);
+    }
+    this.grantedCount = count;
+  }
+
+  /**
+   * Packs grant results into a vector with one bit per permission.
+   */
+  static long[] toGrantVector(String[] permissions, int[] grantResults) {
     if(permissions.length != grantResults.length) {
       throw new IllegalArgumentException("Both arrays of permissions and grantResults must have equal lengths.");
     }
-    ArrayList<String> granted = new ArrayList<>();
-    ArrayList<String> refused = new ArrayList<>();
-    for (int i = 0; i < permissions.length; ++i) {
+    final long[] grants = new long[(grantResults.length + 63) >>> 6];
+    for (int i = 0; i < grantResults.length; ++i) {
       if (PackageManager.PERMISSION_GRANTED == grantResults[i]) {
-        granted.add(permissions[i]);
-      } else {
-        refused.add(permissions[i]);
+        grants[i >>> 6] |= 1L << i;
+      }
+    }
+    return grants;
+  }
+
+  /**
+   * @param permission A permission to be checked.
+   * @return {@code true} if the permission was granted.
+   */
+  boolean isGranted(String permission) {
+    for (int i = 0; i < permissions.length; ++i) {
+      if (permissions[i].equals(permission)) {
+        return isGranted(i);
       }
     }
-    grantedPermissions = granted.toArray(new String[granted.size()]);
-    refusedPermissions = refused.toArray(new String[refused.size()]);
+    return false;
+  }
+
+  /**
+   * @return {@code true} if all permissions were granted.
+   */
+  boolean areAllGranted() {
+    return grantedCount == permissions.length;
+  }
+
+  int getGrantedCount() {
+    return grantedCount;
+  }
+
+  int getRefusedCount() {
+    return permissions.length - grantedCount;
   }
 
   boolean hasAnyRefusedPermissions() {
-    return refusedPermissions.length > 0;
+    return grantedCount < permissions.length;
+  }
+
+  /**
+   * @return A shared array of granted permissions, that must not be modified.
+   */
+  String[] grantedPermissions() {
+    String[] array = grantedPermissions;
+    if (array == null) {
+      grantedPermissions = array = split(true, grantedCount);
+    }
+    return array;
+  }
+
+  /**
+   * @return A shared array of refused permissions, that must not be modified.
+   */
+  String[] refusedPermissions() {
+    String[] array = refusedPermissions;
+    if (array == null) {
+      refusedPermissions = array = split(false, permissions.length - grantedCount);
+    }
+    return array;
+  }
+
+  boolean isGranted(int index) {
+    return (grants[index >>> 6] & (1L << index)) != 0;
+  }
+
+  private String[] split(boolean granted, int count) {
+    final String[] array = new String[count];
+    for (int i = 0, j = 0; j < count; ++i) {
+      if (isGranted(i) == granted) {
+        array[j++] = permissions[i];
+      }
+    }
+    return array;
+  }
+
+  @Override
+  public String toString() {
+    return "RequestPermissionsResult{granted=" + Arrays.toString(grantedPermissions())
+        + ", refused=" + Arrays.toString(refusedPermissions()) + '}';
   }
 }
@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2016 Jakub Księżniak
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.github.jksiezni.permissive;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Saves pending {@link Permissive.Request}s of an Activity in its instance state,
+ * so they are enqueued again, when the Activity is restored after the process was killed.
+ *
+ * <p>Only requests scoped to the Activity with {@link Permissive.Action#scopedTo(Activity, String)} are saved,
+ * because their keys allow to reconnect listeners with
+ * {@link Permissive#reattachListener(Activity, String, PermissionsResultListener)}. Each request is saved
+ * as its key, permissions, timeout and flags in a few parallel arrays. Listeners and rationales can't be saved,
+ * so restored requests use global rationales only.</p>
+ *
+ * <p>The current request is not saved, because its dialog is restored by the system,
+ * and it's rebuilt with {@link PermissiveMessenger#rebuildRequest()}. Requests coalesced into its dialog
+ * are saved, because a rebuilt request doesn't know about them.</p>
+ */
+final class SavedRequests {
+  private static final String STATE_KEY = "com.github.jksiezni.permissive.saved_requests";
+
+  private static final String PROCESS = "process";
+  private static final String KEYS = "keys";
+  private static final String COUNTS = "counts";
+  private static final String PERMISSIONS = "permissions";
+  private static final String TIMEOUTS = "timeouts";
+  private static final String FLAGS = "flags";
+
+  private static final int FLAG_RATIONALE_FIRST = 1;
+
+  /* identifies this process, so saved requests are not restored after a configuration change */
+  static final String PROCESS_TOKEN = UUID.randomUUID().toString();
+
+  private SavedRequests() { /* never instantiated */ }
+
+  static void save(Activity activity, Bundle outState) {
+    final List<Permissive.Request> requests = Permissive.permissiveHandler.getScopedPendingRequests(activity);
+    if (requests.isEmpty()) {
+      return;
+    }
+    final int size = requests.size();
+    final String[] keys = new String[size];
+    final int[] counts = new int[size];
+    final long[] timeouts = new long[size];
+    final int[] flags = new int[size];
+    int total = 0;
+    for (int i = 0; i < size; ++i) {
+      final Permissive.Request request = requests.get(i);
+      keys[i] = request.scope.key;
+      counts[i] = request.getPermissions().length;
+      timeouts[i] = request.getTimeout();
+      flags[i] = request.shouldDisplayRationaleFirst() ? FLAG_RATIONALE_FIRST : 0;
+      total += counts[i];
+    }
+    final String[] permissions = new String[total];
+    for (int i = 0, offset = 0; i < size; offset += counts[i++]) {
+      System.arraycopy(requests.get(i).getPermissions(), 0, permissions, offset, counts[i]);
+    }
+    final Bundle state = new Bundle();
+    state.putString(PROCESS, PROCESS_TOKEN);
+    state.putStringArray(KEYS, keys);
+    state.putIntArray(COUNTS, counts);
+    state.putStringArray(PERMISSIONS, permissions);
+    state.putLongArray(TIMEOUTS, timeouts);
+    state.putIntArray(FLAGS, flags);
+    outState.putBundle(STATE_KEY, state);
+  }
+
+  /**
+   * Enqueues saved requests again, if the process was killed since they were saved.
+   * Their results are kept, until listeners are reattached.
+   */
+  static void restore(Activity activity, Bundle savedInstanceState) {
+    final Bundle state = savedInstanceState.getBundle(STATE_KEY);
+    if (state == null || PROCESS_TOKEN.equals(state.getString(PROCESS))) {
+      return;
+    }
+    final String[] keys = state.getStringArray(KEYS);
+    final int[] counts = state.getIntArray(COUNTS);
+    final String[] permissions = state.getStringArray(PERMISSIONS);
+    final long[] timeouts = state.getLongArray(TIMEOUTS);
+    final int[] flags = state.getIntArray(FLAGS);
+    if (keys == null || counts == null || permissions == null || timeouts == null || flags == null) {
+      return;
+    }
+    for (int i = 0, offset = 0; i < keys.length; offset += counts[i++]) {
+      final String[] requestPermissions = new String[counts[i]];
+      System.arraycopy(permissions, offset, requestPermissions, 0, counts[i]);
+      final Permissive.Request request = new Permissive.Request(requestPermissions)
+          .showRationaleFirst((flags[i] & FLAG_RATIONALE_FIRST) != 0)
+          .withTimeout(timeouts[i]);
+      request.scope = Permissive.scopes.restore(activity, keys[i], request);
+      request.execute(activity);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DenialTrackerTest {
+
+    private static final String PERMISSION = Manifest.permission.CAMERA;
+    private static final String[] PERMISSIONS = {PERMISSION};
+    private static final int[] DENIED = {PackageManager.PERMISSION_DENIED};
+
+    @Mock
+    Activity mockActivity;
+
+    private final List<Runnable> loads = new ArrayList<>();
+
+    private final Executor loader = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            loads.add(command);
+        }
+    };
+
+    private DenialTracker tracker;
+
+    @Before
+    public void setup() {
+        tracker = new DenialTracker(loader);
+        when(mockActivity.checkPermission(eq(PERMISSION), anyInt(), anyInt()))
+                .thenReturn(PackageManager.PERMISSION_DENIED);
+    }
+
+    @Test
+    public void testFirstDenialIsNotPermanent() {
+        when(mockActivity.shouldShowRequestPermissionRationale(PERMISSION)).thenReturn(false);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, new String[0]);
+        assertSame(PERMISSIONS, tracker.filterAskable(mockActivity, PERMISSIONS));
+    }
+
+    @Test
+    public void testNeverAskAgainAfterRationale() {
+        when(mockActivity.shouldShowRequestPermissionRationale(PERMISSION)).thenReturn(false);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, PERMISSIONS);
+        assertArrayEquals(new String[0], tracker.filterAskable(mockActivity, PERMISSIONS));
+
+        // the user changed it in Settings
+        when(mockActivity.shouldShowRequestPermissionRationale(PERMISSION)).thenReturn(true);
+        assertSame(PERMISSIONS, tracker.filterAskable(mockActivity, PERMISSIONS));
+    }
+
+    @Test
+    public void testGrantForgetsDenials() {
+        when(mockActivity.shouldShowRequestPermissionRationale(PERMISSION)).thenReturn(false);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, new String[0]);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, new int[]{PackageManager.PERMISSION_GRANTED}, new String[0]);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, new String[0]);
+        assertSame(PERMISSIONS, tracker.filterAskable(mockActivity, PERMISSIONS));
+    }
+
+    @Test
+    public void testRepeatedDenialWithoutRationaleIsNotPermanent() {
+        when(mockActivity.shouldShowRequestPermissionRationale(PERMISSION)).thenReturn(false);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, new String[0]);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, new String[0]);
+        assertSame(PERMISSIONS, tracker.filterAskable(mockActivity, PERMISSIONS));
+    }
+
+    @Test
+    public void testGrantInSettingsForgetsDenial() {
+        when(mockActivity.shouldShowRequestPermissionRationale(PERMISSION)).thenReturn(false);
+        tracker.onPermissionsResult(mockActivity, PERMISSIONS, DENIED, PERMISSIONS);
+        assertArrayEquals(new String[0], tracker.filterAskable(mockActivity, PERMISSIONS));
+
+        when(mockActivity.checkPermission(eq(PERMISSION), anyInt(), anyInt()))
+                .thenReturn(PackageManager.PERMISSION_GRANTED);
+        assertSame(PERMISSIONS, tracker.filterAskable(mockActivity, PERMISSIONS));
+
+        // revoked again, but the permanent denial is already forgotten
+        when(mockActivity.checkPermission(eq(PERMISSION), anyInt(), anyInt()))
+                .thenReturn(PackageManager.PERMISSION_DENIED);
+        assertSame(PERMISSIONS, tracker.filterAskable(mockActivity, PERMISSIONS));
+    }
+
+    @Test
+    public void testStatesAreNotLoadedOnCallingThread() {
+        tracker.filterAskable(mockActivity, PERMISSIONS);
+        verify(mockActivity, never()).getSharedPreferences(anyString(), anyInt());
+        assertEquals(1, loads.size());
+
+        loads.get(0).run();
+        verify(mockActivity).getSharedPreferences(anyString(), eq(Context.MODE_PRIVATE));
+        tracker.filterAskable(mockActivity, PERMISSIONS);
+        assertEquals(1, loads.size());
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class EventRecorderTest {
+
+    @Test
+    public void testDumpKeepsOnlyRecentEvents() {
+        EventRecorder recorder = new EventRecorder(4);
+        for (int i = 1; i <= 6; ++i) {
+            recorder.record(EventRecorder.ENQUEUE, i, 1, 0, null);
+        }
+        String[] lines = dump(recorder);
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].contains("action=3"));
+        assertTrue(lines[3].contains("action=6"));
+    }
+
+    @Test
+    public void testDumpPermissions() {
+        EventRecorder recorder = new EventRecorder(4);
+        recorder.record(EventRecorder.FINALIZE, 1, 0, 0, PermissionSet.of(Manifest.permission.CAMERA));
+        String[] lines = dump(recorder);
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("FINALIZE"));
+        assertTrue(lines[0].contains(Manifest.permission.CAMERA));
+    }
+
+    private static String[] dump(EventRecorder recorder) {
+        StringWriter writer = new StringWriter();
+        recorder.dump(new PrintWriter(writer));
+        return writer.toString().trim().split("\n");
+    }
+}
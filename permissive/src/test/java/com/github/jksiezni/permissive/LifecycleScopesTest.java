@@ -0,0 +1,80 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LifecycleScopesTest {
+
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA};
+    private static final RequestPermissionsResult RESULT =
+        new RequestPermissionsResult(PERMISSIONS, new int[]{PackageManager.PERMISSION_GRANTED});
+
+    @Mock
+    Activity owner;
+
+    @Mock
+    Activity recreatedOwner;
+
+    @Test
+    public void testListenersAreHeldStrongly() {
+        Permissive.Action<Activity> action = new Permissive.Action<Activity>(PERMISSIONS)
+            .whenPermissionsResultReceived(mock(PermissionsResultListener.class))
+            .scopedTo(owner, "strong");
+        System.gc();
+        assertNotNull(action.getPermissionsResultListener());
+
+        Permissive.scopes.onOwnerDestroyed(owner, false);
+        assertNull(action.getPermissionsResultListener());
+        assertNull(action.scope);
+    }
+
+    @Test
+    public void testResultIsDeliveredToReattachedListener() {
+        PermissionsResultListener oldListener = mock(PermissionsResultListener.class);
+        PermissionsResultListener newListener = mock(PermissionsResultListener.class);
+        Permissive.Action<Activity> action = new Permissive.Action<Activity>(PERMISSIONS)
+            .whenPermissionsResultReceived(oldListener)
+            .scopedTo(owner, "recreated");
+
+        Permissive.scopes.onOwnerDestroyed(owner, true);
+        PermissiveHandler.fireActionCallbacks(action, RESULT);
+        verify(oldListener, never()).onPermissionsResult(PERMISSIONS, new String[0]);
+
+        assertTrue(Permissive.reattachListener(recreatedOwner, "recreated", newListener));
+        verify(newListener).onPermissionsResult(RESULT.grantedPermissions(), RESULT.refusedPermissions());
+        assertNull(action.scope);
+        assertFalse(Permissive.reattachListener(recreatedOwner, "recreated", newListener));
+    }
+
+    @Test
+    public void testReattachedListenerReceivesLaterResult() {
+        PermissionsResultListener newListener = mock(PermissionsResultListener.class);
+        Permissive.Action<Activity> action = new Permissive.Action<Activity>(PERMISSIONS)
+            .whenPermissionsResultReceived(mock(PermissionsResultListener.class))
+            .scopedTo(owner, "later");
+
+        Permissive.scopes.onOwnerDestroyed(owner, true);
+        assertTrue(Permissive.reattachListener(recreatedOwner, "later", newListener));
+        PermissiveHandler.fireActionCallbacks(action, RESULT);
+        verify(newListener).onPermissionsResult(RESULT.grantedPermissions(), RESULT.refusedPermissions());
+        assertNull(action.scope);
+    }
+}
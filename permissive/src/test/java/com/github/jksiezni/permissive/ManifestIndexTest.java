@@ -0,0 +1,50 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ManifestIndexTest {
+
+    @Mock
+    private Context context;
+
+    @Test
+    public void testEverythingIsDeclaredUntilLoaded() {
+        ManifestIndex index = new ManifestIndex();
+        assertFalse(index.isUndeclared(Manifest.permission.CAMERA));
+
+        index.markUnavailable();
+        index.update(new String[]{Manifest.permission.READ_CONTACTS});
+        String[] permissions = {Manifest.permission.CAMERA};
+        assertFalse(index.isUndeclared(Manifest.permission.CAMERA));
+        assertSame(permissions, index.filterDeclared(context, permissions));
+    }
+
+    @Test
+    public void testFilterUndeclaredPermissions() {
+        ManifestIndex index = new ManifestIndex();
+        index.update(new String[]{Manifest.permission.CAMERA, Manifest.permission.READ_CONTACTS});
+        assertTrue(index.isUndeclared(Manifest.permission.RECORD_AUDIO));
+
+        String[] declared = {Manifest.permission.READ_CONTACTS, Manifest.permission.CAMERA};
+        assertSame(declared, index.filterDeclared(context, declared));
+        assertArrayEquals(new String[]{Manifest.permission.CAMERA},
+            index.filterDeclared(context, new String[]{Manifest.permission.RECORD_AUDIO, Manifest.permission.CAMERA}));
+        assertArrayEquals(new String[0],
+            index.filterDeclared(context, new String[]{Manifest.permission.RECORD_AUDIO}));
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.jksiezni.permissive;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PermissionGroupIndexTest {
+
+    private static final String LOCATION = "com.example.group.LOCATION";
+    private static final String FINE = "com.example.group.FINE_LOCATION";
+    private static final String COARSE = "com.example.group.COARSE_LOCATION";
+    private static final String BACKGROUND = "com.example.group.BACKGROUND_LOCATION";
+    private static final String CAMERA = "com.example.group.CAMERA";
+
+    @Mock
+    Context mockContext;
+
+    @Mock
+    PackageManager mockPackageManager;
+
+    private PermissionGroupIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        Permissive.invalidatePermissionCache();
+        index = new PermissionGroupIndex();
+        when(mockContext.getPackageManager()).thenReturn(mockPackageManager);
+        PermissionInfo fine = info(FINE, LOCATION, PermissionInfo.PROTECTION_DANGEROUS);
+        PermissionInfo coarse = info(COARSE, LOCATION, PermissionInfo.PROTECTION_DANGEROUS);
+        PermissionInfo background = info(BACKGROUND, LOCATION, PermissionInfo.PROTECTION_DANGEROUS);
+        when(mockPackageManager.getPermissionInfo(eq(FINE), anyInt())).thenReturn(fine);
+        when(mockPackageManager.getPermissionInfo(eq(COARSE), anyInt())).thenReturn(coarse);
+        when(mockPackageManager.getPermissionInfo(eq(BACKGROUND), anyInt())).thenReturn(background);
+        when(mockPackageManager.getPermissionInfo(eq(CAMERA), anyInt()))
+                .thenReturn(info(CAMERA, null, PermissionInfo.PROTECTION_DANGEROUS));
+        when(mockPackageManager.queryPermissionsByGroup(eq(LOCATION), anyInt()))
+                .thenReturn(Arrays.asList(fine, coarse, background));
+        when(mockContext.checkPermission(eq(COARSE), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_GRANTED);
+        when(mockContext.checkPermission(eq(FINE), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+        when(mockContext.checkPermission(eq(BACKGROUND), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+        when(mockContext.checkPermission(eq(CAMERA), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+    }
+
+    @Test
+    public void testGrantedByGroup() {
+        assertTrue(index.isGrantedByGroup(mockContext, FINE));
+        assertFalse(index.isGrantedByGroup(mockContext, CAMERA));
+        assertTrue(index.areGrantedByGroup(mockContext, new String[]{FINE, BACKGROUND}));
+        assertFalse(index.areGrantedByGroup(mockContext, new String[]{FINE, CAMERA}));
+        assertFalse(index.areGrantedByGroup(mockContext, new String[0]));
+    }
+
+    @Test
+    public void testGroupSiblings() {
+        String[] ordered = {FINE, BACKGROUND, CAMERA};
+        assertSame(ordered, index.groupSiblings(mockContext, ordered));
+        assertArrayEquals(new String[]{FINE, BACKGROUND, CAMERA},
+                index.groupSiblings(mockContext, new String[]{FINE, CAMERA, BACKGROUND}));
+    }
+
+    private static PermissionInfo info(String name, String group, int protectionLevel) {
+        PermissionInfo info = new PermissionInfo();
+        info.name = name;
+        info.group = group;
+        info.protectionLevel = protectionLevel;
+        return info;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class PermissionSetTest {
+
+    private static final String CAMERA = Manifest.permission.CAMERA;
+    private static final String LOCATION = Manifest.permission.ACCESS_FINE_LOCATION;
+    private static final String STORAGE = Manifest.permission.WRITE_EXTERNAL_STORAGE;
+
+    @Test
+    public void testContains() {
+        PermissionSet set = PermissionSet.of(CAMERA, LOCATION);
+        assertTrue(set.contains(CAMERA));
+        assertTrue(set.contains(LOCATION));
+        assertFalse(set.contains(STORAGE));
+        assertEquals(2, set.size());
+        assertTrue(PermissionSet.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void testSetOperations() {
+        PermissionSet a = PermissionSet.of(CAMERA, LOCATION);
+        PermissionSet b = PermissionSet.of(LOCATION, STORAGE);
+
+        assertEquals(PermissionSet.of(CAMERA, LOCATION, STORAGE), a.union(b));
+        assertEquals(PermissionSet.of(LOCATION), a.intersect(b));
+        assertEquals(PermissionSet.of(CAMERA), a.minus(b));
+        assertTrue(a.minus(a).isEmpty());
+        assertEquals(PermissionSet.EMPTY, a.minus(a));
+        assertTrue(a.union(b).containsAll(a));
+        assertFalse(a.containsAll(b));
+    }
+
+    @Test
+    public void testIteration() {
+        PermissionSet set = PermissionSet.of(STORAGE, CAMERA);
+        int count = 0;
+        for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+            assertTrue(set.contains(PermissionSet.nameOf(id)));
+            ++count;
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void testFilterPreservesOrder() {
+        PermissionSet set = PermissionSet.of(CAMERA, STORAGE);
+        assertArrayEquals(new String[]{STORAGE, CAMERA},
+                set.filter(new String[]{STORAGE, LOCATION, CAMERA}));
+    }
+
+    @Test
+    public void testPermissionsPastRegistryLimit() {
+        for (int i = PermissionRegistry.size(); i < PermissionRegistry.MAX_SIZE; ++i) {
+            PermissionRegistry.idOf("com.example.permission.FILL_" + i);
+        }
+        String first = "com.example.permission.UNINTERNED_1";
+        String second = "com.example.permission.UNINTERNED_2";
+        assertEquals(-1, PermissionRegistry.idOf(first));
+
+        PermissionSet a = PermissionSet.of(CAMERA, first);
+        PermissionSet b = PermissionSet.of(second, first);
+        assertTrue(a.contains(first));
+        assertFalse(a.contains(second));
+        assertEquals(2, a.size());
+        assertEquals(PermissionSet.of(first), a.intersect(b));
+        assertEquals(PermissionSet.of(CAMERA), a.minus(b));
+        assertEquals(PermissionSet.of(CAMERA, first, second), a.union(b));
+        assertTrue(a.union(b).containsAll(b));
+        assertFalse(a.containsAll(b));
+        assertArrayEquals(new String[]{CAMERA, first}, a.toArray());
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PermissionStateCacheTest {
+
+    private static final String PERMISSION = Manifest.permission.ACCESS_COARSE_LOCATION;
+
+    @Mock
+    Context mockContext;
+
+    private PermissionStateCache cache;
+
+    @Before
+    public void setup() {
+        cache = new PermissionStateCache();
+        Permissive.invalidatePermissionCache();
+        when(mockContext.checkPermission(eq(PERMISSION), anyInt(), anyInt()))
+                .thenReturn(PackageManager.PERMISSION_DENIED);
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testCheckIsCached() {
+        assertEquals(PackageManager.PERMISSION_DENIED, cache.checkPermission(mockContext, PERMISSION));
+        assertEquals(PackageManager.PERMISSION_DENIED, cache.checkPermission(mockContext, PERMISSION));
+        verify(mockContext, times(1)).checkPermission(eq(PERMISSION), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testUpdateWithResults() {
+        cache.checkPermission(mockContext, PERMISSION);
+        cache.update(new String[]{PERMISSION}, new int[]{PackageManager.PERMISSION_GRANTED});
+        assertEquals(PackageManager.PERMISSION_GRANTED, cache.checkPermission(mockContext, PERMISSION));
+        verify(mockContext, times(1)).checkPermission(eq(PERMISSION), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.checkPermission(mockContext, PERMISSION);
+        cache.invalidate();
+        cache.checkPermission(mockContext, PERMISSION);
+        verify(mockContext, times(2)).checkPermission(eq(PERMISSION), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testUndeclaredPermissionIsDeniedWithoutCheckBelowM() throws Exception {
+        // unit tests run with SDK_INT 0, so the manifest is loaded before the first check
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.requestedPermissions = new String[]{PERMISSION};
+        PackageManager packageManager = mock(PackageManager.class);
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(packageInfo);
+        when(mockContext.getPackageManager()).thenReturn(packageManager);
+
+        assertEquals(PackageManager.PERMISSION_DENIED, cache.checkPermission(mockContext, Manifest.permission.CAMERA));
+        verify(mockContext, never()).checkPermission(eq(Manifest.permission.CAMERA), anyInt(), anyInt());
+        assertEquals(PackageManager.PERMISSION_DENIED, cache.checkPermission(mockContext, PERMISSION));
+        verify(mockContext, times(1)).checkPermission(eq(PERMISSION), anyInt(), anyInt());
+    }
+}
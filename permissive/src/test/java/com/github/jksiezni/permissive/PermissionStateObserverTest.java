@@ -0,0 +1,139 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PermissionStateObserverTest {
+
+    private static final String PERMISSION = Manifest.permission.CAMERA;
+
+    @Mock
+    Context mockContext;
+
+    @Mock
+    PermissionStateObserver.Listener mockListener;
+
+    @Mock
+    PermissionStateObserver.Listener otherListener;
+
+    private final List<Runnable> queue = new ArrayList<>();
+    private final Executor queueExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+    };
+
+    private PermissionStateObserver observer;
+
+    @Before
+    public void setup() {
+        Permissive.invalidatePermissionCache();
+        observer = new PermissionStateObserver();
+        setGranted(false);
+        observer.subscribe(mockContext, mockListener, queueExecutor, PERMISSION);
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testPublishesChangesOnly() {
+        setGranted(true);
+        runQueue();
+        verify(mockListener, times(1)).onPermissionStateChanged(new String[]{PERMISSION}, new String[0]);
+
+        observer.checkForChanges(mockContext);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testCoalescesNotifications() {
+        setGranted(true);
+        setGranted(false);
+        assertEquals(1, queue.size());
+        runQueue();
+        verify(mockListener, never()).onPermissionStateChanged(new String[]{PERMISSION}, new String[0]);
+
+        setGranted(true);
+        setGranted(false);
+        setGranted(true);
+        assertEquals(1, queue.size());
+        runQueue();
+        verify(mockListener, times(1)).onPermissionStateChanged(new String[]{PERMISSION}, new String[0]);
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        observer.unsubscribe(mockListener);
+        setGranted(true);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testSubscribeAfterUnobservedChange() {
+        observer.unsubscribe(mockListener);
+        // nobody listens, so the change is not published
+        setGranted(true);
+
+        observer.subscribe(mockContext, otherListener, queueExecutor, PERMISSION);
+        observer.checkForChanges(mockContext);
+        runQueue();
+        verify(otherListener, never()).onPermissionStateChanged(any(String[].class), any(String[].class));
+    }
+
+    @Test
+    public void testSubscribePublishesChangesToOthers() {
+        stubGranted(true);
+        observer.subscribe(mockContext, otherListener, queueExecutor, PERMISSION);
+        runQueue();
+        verify(mockListener, times(1)).onPermissionStateChanged(new String[]{PERMISSION}, new String[0]);
+        verify(otherListener, never()).onPermissionStateChanged(any(String[].class), any(String[].class));
+    }
+
+    private void setGranted(boolean granted) {
+        stubGranted(granted);
+        observer.checkForChanges(mockContext);
+    }
+
+    private void stubGranted(boolean granted) {
+        when(mockContext.checkPermission(eq(PERMISSION), anyInt(), anyInt()))
+                .thenReturn(granted ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED);
+        Permissive.invalidatePermissionCache();
+    }
+
+    private void runQueue() {
+        final List<Runnable> tasks = new ArrayList<>(queue);
+        queue.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+}
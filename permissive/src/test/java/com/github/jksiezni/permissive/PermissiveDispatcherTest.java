@@ -0,0 +1,142 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowActivity;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class PermissiveDispatcherTest {
+
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA};
+
+    public static class HostActivity extends Activity implements PermissiveDispatcher.Host {
+    }
+
+    private String[] granted;
+
+    private final PermissionsResultListener listener = new PermissionsResultListener() {
+        @Override
+        public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+            granted = grantedPermissions;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = PERMISSIONS;
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).denyPermissions(PERMISSIONS);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testHostIsAskedWithoutFragment() {
+        final HostActivity activity = Robolectric.buildActivity(HostActivity.class).setup().get();
+        new Permissive.Request(PERMISSIONS).whenPermissionsResultReceived(listener).execute(activity);
+        idleMainLooper();
+
+        assertNull(activity.getFragmentManager().findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG));
+        final ShadowActivity.PermissionsRequest request = shadowOf(activity).getLastRequestedPermission();
+        assertEquals(PermissiveDispatcher.REQUEST_CODE, request.requestCode);
+        assertArrayEquals(PERMISSIONS, request.requestedPermissions);
+
+        assertFalse(PermissiveDispatcher.dispatchRequestPermissionsResult(activity, 1, PERMISSIONS,
+            new int[]{PackageManager.PERMISSION_GRANTED}));
+        assertTrue(PermissiveDispatcher.dispatchRequestPermissionsResult(activity, request.requestCode, PERMISSIONS,
+            new int[]{PackageManager.PERMISSION_GRANTED}));
+        idleMainLooper();
+
+        assertArrayEquals(PERMISSIONS, granted);
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    @Test
+    public void testRecreatedHostReceivesResult() {
+        final HostActivity activity = Robolectric.buildActivity(HostActivity.class).setup().get();
+        new Permissive.Request(PERMISSIONS).whenPermissionsResultReceived(listener).execute(activity);
+        idleMainLooper();
+
+        final Bundle state = new Bundle();
+        PermissiveDispatcher.saveState(activity, state);
+        final HostActivity recreated = Robolectric.buildActivity(HostActivity.class).create(state).get();
+        final HostActivity other = Robolectric.buildActivity(HostActivity.class).setup().get();
+
+        // a host of the same class, which didn't ask, can't take the result
+        PermissiveDispatcher.dispatchRequestPermissionsResult(other, PermissiveDispatcher.REQUEST_CODE, PERMISSIONS,
+            new int[]{PackageManager.PERMISSION_GRANTED});
+        idleMainLooper();
+        assertNull(granted);
+
+        PermissiveDispatcher.dispatchRequestPermissionsResult(recreated, PermissiveDispatcher.REQUEST_CODE, PERMISSIONS,
+            new int[]{PackageManager.PERMISSION_GRANTED});
+        idleMainLooper();
+        assertArrayEquals(PERMISSIONS, granted);
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    @Test
+    public void testRequestIsRebuiltAfterProcessDeath() {
+        final HostActivity activity = Robolectric.buildActivity(HostActivity.class).setup().get();
+        new Permissive.Request(PERMISSIONS).execute(activity);
+        idleMainLooper();
+
+        final Bundle state = new Bundle();
+        PermissiveDispatcher.saveState(activity, state);
+        // pretend, that the state was saved by a killed process, which lost its pending request
+        state.getBundle("com.github.jksiezni.permissive.direct_request").putString("process", "killed");
+        Permissive.permissiveHandler.onDirectHostDestroyed(activity);
+        idleMainLooper();
+        assertFalse(Permissive.hasPendingActions());
+
+        final HostActivity recreated = Robolectric.buildActivity(HostActivity.class).create(state).get();
+        final Permissive.Request request = PermissiveDispatcher.rebuildRequest(recreated, state);
+        assertNotNull(request);
+        assertArrayEquals(PERMISSIONS, request.getPermissions());
+        request.whenPermissionsResultReceived(listener);
+
+        PermissiveDispatcher.dispatchRequestPermissionsResult(recreated, PermissiveDispatcher.REQUEST_CODE, PERMISSIONS,
+            new int[]{PackageManager.PERMISSION_GRANTED});
+        idleMainLooper();
+        assertArrayEquals(PERMISSIONS, granted);
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class PermissiveFastPathTest {
+
+    private static final String GRANTED = Manifest.permission.RECORD_AUDIO;
+    private static final String DENIED = Manifest.permission.CAMERA;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final List<String> calls = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    private final PermissionsGrantedListener grantedListener = new PermissionsGrantedListener() {
+        @Override
+        public void onPermissionsGranted(String[] permissions) {
+            calls.add("granted " + Arrays.toString(permissions));
+            threads.add(Thread.currentThread());
+        }
+    };
+
+    private final PermissionsRefusedListener refusedListener = new PermissionsRefusedListener() {
+        @Override
+        public void onPermissionsRefused(String[] permissions) {
+            calls.add("refused " + Arrays.toString(permissions));
+        }
+    };
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = new String[]{GRANTED, DENIED};
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).grantPermissions(GRANTED);
+        shadowOf(application).denyPermissions(DENIED);
+        Permissive.invalidatePermissionCache();
+        Permissive.setSynchronousFastPath(true);
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.setSynchronousFastPath(false);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testGrantedActionCompletesSynchronouslyOnMainThread() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        shadowOf(Looper.getMainLooper()).pause();
+
+        new Permissive.Action<Activity>(GRANTED).whenPermissionsGranted(grantedListener).execute(activity);
+
+        assertEquals(1, calls.size());
+        assertSame(Thread.currentThread(), threads.get(0));
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    @Test
+    public void testFastPathRecordsOutcome() {
+        final List<String> outcomes = new ArrayList<>();
+        Permissive.setMetrics(new PermissiveMetrics() {
+            @Override
+            public void onPermissionOutcome(Permissive.Action action, String permission, boolean granted) {
+                outcomes.add(permission + "=" + granted);
+            }
+        });
+        try {
+            final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+            new Permissive.Action<Activity>(GRANTED).execute(activity);
+            assertEquals(Arrays.asList(GRANTED + "=true"), outcomes);
+        } finally {
+            Permissive.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void testActionExecutedOffMainThreadIsEnqueued() throws Exception {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        shadowOf(Looper.getMainLooper()).pause();
+
+        runOnBackgroundThread(new Runnable() {
+            @Override
+            public void run() {
+                new Permissive.Action<Activity>(GRANTED).whenPermissionsGranted(grantedListener).execute(activity);
+            }
+        });
+        // the queue is checked only by the main thread, so the listener can't be called yet
+        assertTrue(calls.isEmpty());
+
+        idleMainLooper();
+        assertEquals(1, calls.size());
+        assertSame(Looper.getMainLooper().getThread(), threads.get(0));
+    }
+
+    @Test
+    public void testActionExecutedOffMainThreadWaitsForPendingRequest() throws Exception {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        shadowOf(Looper.getMainLooper()).pause();
+
+        final Permissive.Request request = new Permissive.Request(DENIED);
+        request.whenPermissionsRefused(refusedListener);
+        request.execute(activity);
+        // the request is not processed yet, so its lane still looks idle
+        assertEquals(0, Permissive.getPendingActionsCount(activity));
+
+        runOnBackgroundThread(new Runnable() {
+            @Override
+            public void run() {
+                new Permissive.Action<Activity>(GRANTED).whenPermissionsGranted(grantedListener).execute(activity);
+            }
+        });
+        idleMainLooper();
+        assertTrue(calls.isEmpty());
+
+        answerDialog(activity, PackageManager.PERMISSION_DENIED);
+        assertEquals(Arrays.asList("refused [" + DENIED + "]", "granted [" + GRANTED + "]"), calls);
+    }
+
+    @Test
+    public void testGrantedActionOnExecutorDoesNotNeedMainThread() throws Exception {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        Permissive.setSynchronousFastPath(false);
+        shadowOf(Looper.getMainLooper()).pause();
+
+        final Thread[] worker = new Thread[1];
+        runOnBackgroundThread(new Runnable() {
+            @Override
+            public void run() {
+                worker[0] = Thread.currentThread();
+                new Permissive.Action<Activity>(GRANTED).whenPermissionsGranted(grantedListener)
+                    .execute(activity, DIRECT_EXECUTOR);
+            }
+        });
+
+        // the main looper is paused, so the action was completed on the executor
+        assertEquals(1, calls.size());
+        assertSame(worker[0], threads.get(0));
+    }
+
+    @Test
+    public void testRefusedActionOnExecutorWaitsForMainThread() throws Exception {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        shadowOf(Looper.getMainLooper()).pause();
+
+        runOnBackgroundThread(new Runnable() {
+            @Override
+            public void run() {
+                new Permissive.Action<Activity>(DENIED).whenPermissionsRefused(refusedListener)
+                    .execute(activity, DIRECT_EXECUTOR);
+            }
+        });
+        assertTrue(calls.isEmpty());
+
+        idleMainLooper();
+        assertEquals(Arrays.asList("refused [" + DENIED + "]"), calls);
+    }
+
+    private static void runOnBackgroundThread(Runnable runnable) throws InterruptedException {
+        final Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+
+    private static void answerDialog(Activity activity, int grantResult) {
+        final PermissiveFragment fragment = (PermissiveFragment) activity.getFragmentManager()
+            .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+        if (fragment == null || !fragment.isResumed()) {
+            return;
+        }
+        final String[] permissions = fragment.getArguments().getStringArray("permissions");
+        final int[] grantResults = new int[permissions.length];
+        Arrays.fill(grantResults, grantResult);
+        fragment.onRequestPermissionsResult(42, permissions, grantResults);
+        idleMainLooper();
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class PermissiveFutureTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testCompleteNotifiesListeners() throws Exception {
+        PermissiveFuture future = new PermissiveFuture(new Permissive.Action<>(Manifest.permission.CAMERA), null);
+        final AtomicInteger calls = new AtomicInteger();
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        }, DIRECT);
+        assertFalse(future.isDone());
+        assertEquals(0, calls.get());
+
+        RequestPermissionsResult result = new RequestPermissionsResult(
+            new String[]{Manifest.permission.CAMERA}, new int[]{PackageManager.PERMISSION_GRANTED});
+        future.complete(result);
+
+        assertTrue(future.isDone());
+        assertArrayEquals(new String[]{Manifest.permission.CAMERA}, future.get().getGrantedPermissions());
+        assertArrayEquals(new String[0], future.get().getRefusedPermissions());
+        assertTrue(future.get().areAllGranted());
+        assertEquals(1, calls.get());
+        assertFalse(future.cancel(true));
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testResultTellsRefusedPermissions() throws Exception {
+        PermissiveFuture future = new PermissiveFuture(
+            new Permissive.Action<>(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO), null);
+        future.complete(new RequestPermissionsResult(
+            new String[]{Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO},
+            new int[]{PackageManager.PERMISSION_DENIED, PackageManager.PERMISSION_GRANTED}));
+
+        PermissiveFuture.Result result = future.get();
+        assertArrayEquals(new String[]{Manifest.permission.RECORD_AUDIO}, result.getGrantedPermissions());
+        assertArrayEquals(new String[]{Manifest.permission.CAMERA}, result.getRefusedPermissions());
+        assertFalse(result.areAllGranted());
+    }
+
+    @Test
+    public void testListenerAddedAfterCompletionIsCalledImmediately() {
+        PermissiveFuture future = new PermissiveFuture(new Permissive.Action<>(Manifest.permission.CAMERA), null);
+        future.complete(new RequestPermissionsResult(new String[0], new int[0]));
+        final AtomicInteger calls = new AtomicInteger();
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        }, DIRECT);
+        assertEquals(1, calls.get());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testAbandonedFutureIsCancelled() throws Exception {
+        PermissiveFuture future = new PermissiveFuture(new Permissive.Action<>(Manifest.permission.CAMERA), null);
+        future.abandon();
+        assertTrue(future.isCancelled());
+        future.get();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimesOut() throws Exception {
+        PermissiveFuture future = new PermissiveFuture(new Permissive.Action<>(Manifest.permission.CAMERA), null);
+        future.get(10, TimeUnit.MILLISECONDS);
+    }
+}
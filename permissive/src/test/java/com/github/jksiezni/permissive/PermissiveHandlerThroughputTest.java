@@ -0,0 +1,409 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Floods {@link PermissiveHandler} with mixed actions and requests across many activities,
+ * and checks that every action is completed exactly once, in order of execution within its activity,
+ * with a number of messages, that doesn't grow with the size of the queue.
+ *
+ * <p>Each round also measures messages handled per second, the worst drain of
+ * {@code processPendingActions} and the peak retained heap. They are reported, but never asserted,
+ * because wall-clock timings of a shared machine are not stable enough to fail a build.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class PermissiveHandlerThroughputTest {
+
+    private static final int ACTIVITIES = 8;
+    /* the mix of operations repeats every 256 operations */
+    private static final int SMALL_OPERATIONS = 512;
+    private static final int LARGE_OPERATIONS = 4096;
+
+    /* an operation executes, answers or recreates at most one thing, so it's handled with a few messages */
+    private static final int MAX_MESSAGES_PER_OPERATION = 4;
+    /* rounds end with a drain of different length, so messages per operation may differ a bit */
+    private static final double MAX_MESSAGE_GROWTH = 1.1;
+    /* the retained heap is sampled after a garbage collection, so it's not sampled too often */
+    private static final int HEAP_SAMPLING_INTERVAL = 256;
+
+    private static final String REQUEST_PERMISSIONS = "REQUEST_PERMISSIONS";
+
+    private static final String[] GRANTED = {
+        Manifest.permission.ACCESS_NETWORK_STATE
+    };
+    private static final String[] DENIED = {
+        Manifest.permission.CAMERA,
+        Manifest.permission.RECORD_AUDIO,
+        Manifest.permission.READ_CONTACTS,
+        Manifest.permission.WRITE_EXTERNAL_STORAGE
+    };
+
+    /* an action is handed over to the executor once, when it's completed there right away, otherwise twice */
+    private int executorActions;
+    private int executorRuns;
+
+    private final Executor directExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            ++executorRuns;
+            command.run();
+        }
+    };
+
+    private final List<ActivityController<Activity>> controllers = new ArrayList<>();
+    /* recreated activities are kept, so actions queued with them are still completed */
+    private final List<Activity> retiredActivities = new ArrayList<>();
+    /* listeners are held by weak references, so keep them here */
+    private final List<OrderedListener> listeners = new ArrayList<>();
+    /* listeners of each activity, in order of execution */
+    private final Map<Activity, List<OrderedListener>> lanes = new IdentityHashMap<>();
+
+    private Application application;
+    private CountingTracer tracer;
+
+    private final Rationale cancelingRationale = new Rationale() {
+        @Override
+        public void onShowRationale(Activity activity, String[] allowablePermissions, PermissiveMessenger messenger) {
+            messenger.cancelRequest();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+        // declare all permissions in the manifest, so requests are not short-circuited
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = new String[GRANTED.length + DENIED.length];
+        System.arraycopy(GRANTED, 0, packageInfo.requestedPermissions, 0, GRANTED.length);
+        System.arraycopy(DENIED, 0, packageInfo.requestedPermissions, GRANTED.length, DENIED.length);
+        // grant states are checked one by one
+        packageInfo.requestedPermissionsFlags = null;
+        // keep asking denied permissions, so they are never taken as permanently denied
+        for (String permission : DENIED) {
+            shadowOf(application.getPackageManager()).setShouldShowRequestPermissionRationale(permission, true);
+        }
+        Permissive.invalidatePermissionCache();
+        for (int i = 0; i < ACTIVITIES; ++i) {
+            controllers.add(Robolectric.buildActivity(Activity.class).setup());
+        }
+        tracer = new CountingTracer();
+        Permissive.setTracer(tracer);
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.setTracer(PermissiveTracer.NONE);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testMessagesDoNotGrowWithQueue() {
+        final Round small = runRound(SMALL_OPERATIONS);
+        final Round large = runRound(LARGE_OPERATIONS);
+        System.out.println("PermissiveHandler throughput, " + ACTIVITIES + " activities:");
+        System.out.println("  " + small);
+        System.out.println("  " + large);
+
+        // the same mix of operations is repeated, so a larger round must not need more messages per operation
+        assertTrue("Messages per operation grew from " + small + " to " + large,
+            (double) large.messages / LARGE_OPERATIONS <= MAX_MESSAGE_GROWTH * small.messages / SMALL_OPERATIONS);
+    }
+
+    @Test
+    public void testLanesRunIndependently() {
+        shadowOf(application).denyPermissions(DENIED);
+        Permissive.invalidatePermissionCache();
+        final Activity blocked = controllers.get(0).get();
+        final Activity other = controllers.get(1).get();
+
+        final OrderedListener request = execute(new Permissive.Request(DENIED[0]), blocked);
+        final OrderedListener queued = execute(new Permissive.Action<Activity>(GRANTED), blocked);
+        idleMainLooper();
+        final OrderedListener action = execute(new Permissive.Action<Activity>(GRANTED), other);
+        idleMainLooper();
+
+        // a dialog displayed in one activity doesn't block actions of another one
+        assertEquals(1, action.calls);
+        assertEquals(0, request.calls);
+        assertEquals(0, queued.calls);
+        assertEquals(2, Permissive.getPendingActionsCount(blocked));
+        assertEquals(0, Permissive.getPendingActionsCount(other));
+
+        answerDialog(0, false);
+        idleMainLooper();
+        assertEquals(1, request.calls);
+        assertEquals(1, queued.calls);
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    /**
+     * Executes a mix of actions and requests, answers dialogs, cancels rationales and rotates activities,
+     * until all lanes are drained.
+     */
+    private Round runRound(int operations) {
+        shadowOf(application).grantPermissions(GRANTED);
+        shadowOf(application).denyPermissions(DENIED);
+        Permissive.invalidatePermissionCache();
+        listeners.clear();
+        lanes.clear();
+        tracer.reset();
+        executorActions = 0;
+        executorRuns = 0;
+        long peakHeap = 0;
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < operations; ++i) {
+            final int index = i % ACTIVITIES;
+            final Activity activity = controllers.get(index).get();
+            switch ((i / ACTIVITIES) % 8) {
+                case 0:
+                case 1:
+                    execute(new Permissive.Action<Activity>(GRANTED), activity);
+                    break;
+                case 2:
+                    execute(new Permissive.Action<Activity>(DENIED[i % DENIED.length]), activity);
+                    break;
+                case 3:
+                    final Permissive.Action<Activity> offMain = new Permissive.Action<>(GRANTED[0], DENIED[i % DENIED.length]);
+                    offMain.whenPermissionsResultReceived(track(offMain, activity));
+                    offMain.execute(activity, directExecutor);
+                    ++executorActions;
+                    break;
+                case 4:
+                case 5:
+                    execute(new Permissive.Request(DENIED[i % DENIED.length]).withRationale(cancelingRationale), activity);
+                    break;
+                case 6:
+                    execute(new Permissive.Request(DENIED), activity);
+                    break;
+                case 7:
+                    if ((i / (ACTIVITIES * 8)) % 4 == 0) {
+                        recreate(index);
+                    } else {
+                        answerDialog(index, i % 2 == 0);
+                    }
+                    break;
+            }
+            idleMainLooper();
+            if (i % HEAP_SAMPLING_INTERVAL == HEAP_SAMPLING_INTERVAL - 1) {
+                peakHeap = Math.max(peakHeap, retainedHeap());
+            }
+        }
+        for (int pass = 0; Permissive.hasPendingActions(); ++pass) {
+            assertTrue("Lanes are not drained after " + pass + " passes", pass < operations);
+            for (int index = 0; index < ACTIVITIES; ++index) {
+                answerDialog(index, pass % 2 == 0);
+            }
+            idleMainLooper();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        for (OrderedListener listener : listeners) {
+            assertEquals("Not completed exactly once: " + listener, 1, listener.calls);
+        }
+        // actions granted by answered dialogs are completed on their executor, without the main thread
+        final int completedOnExecutor = 2 * executorActions - executorRuns;
+        assertEquals("Every action is enqueued with a single message",
+            listeners.size() - completedOnExecutor, tracer.count(REQUEST_PERMISSIONS));
+        assertTrue("Too many messages: " + tracer.messages + " for " + operations + " operations",
+            tracer.messages <= operations * MAX_MESSAGES_PER_OPERATION);
+        assertFalse(Permissive.hasPendingActions());
+        for (ActivityController<Activity> controller : controllers) {
+            assertEquals(0, Permissive.getPendingActionsCount(controller.get()));
+        }
+        retiredActivities.clear();
+        return new Round(operations, tracer.messages, elapsed, tracer.maxDrainNanos, peakHeap);
+    }
+
+    private static long retainedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private OrderedListener execute(Permissive.Action<Activity> action, Activity activity) {
+        final OrderedListener listener = track(action, activity);
+        action.whenPermissionsResultReceived(listener);
+        action.execute(activity);
+        return listener;
+    }
+
+    private OrderedListener track(Permissive.Action<Activity> action, Activity activity) {
+        List<OrderedListener> lane = lanes.get(activity);
+        if (lane == null) {
+            lane = new ArrayList<>();
+            lanes.put(activity, lane);
+        }
+        final OrderedListener listener = new OrderedListener(action, lane, lane.size());
+        lane.add(listener);
+        listeners.add(listener);
+        return listener;
+    }
+
+    /**
+     * Answers a permissions dialog displayed in the activity, if any.
+     */
+    private void answerDialog(int index, boolean grant) {
+        final Activity activity = controllers.get(index).get();
+        final PermissiveFragment fragment = (PermissiveFragment) activity.getFragmentManager()
+            .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+        if (fragment == null || !fragment.isResumed()) {
+            return;
+        }
+        final String[] permissions = fragment.getArguments().getStringArray("permissions");
+        final int[] grantResults = new int[permissions.length];
+        for (int i = 0; i < permissions.length; ++i) {
+            // grant only the first permission, so some requests display a rationale afterwards
+            grantResults[i] = grant && i == 0 ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+        fragment.onRequestPermissionsResult(42, permissions, grantResults);
+    }
+
+    /**
+     * Simulates a rotation, which restores a pending request with a new activity.
+     */
+    private void recreate(int index) {
+        final ActivityController<Activity> controller = controllers.get(index);
+        retiredActivities.add(controller.get());
+        controller.recreate();
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Counts calls of an action, and checks that a plain action is not completed before
+     * anything executed earlier in the same activity. Requests may be completed earlier,
+     * when they are coalesced with a previous request.
+     */
+    private static class OrderedListener implements PermissionsResultListener {
+        private final Permissive.Action<Activity> action;
+        private final List<OrderedListener> lane;
+        private final int position;
+        int calls;
+
+        OrderedListener(Permissive.Action<Activity> action, List<OrderedListener> lane, int position) {
+            this.action = action;
+            this.lane = lane;
+            this.position = position;
+        }
+
+        @Override
+        public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+            ++calls;
+            if (!(action instanceof Permissive.Request)) {
+                for (int i = 0; i < position; ++i) {
+                    assertTrue(this + " overtook " + lane.get(i), lane.get(i).calls > 0);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "#" + position + " " + action;
+        }
+    }
+
+    /**
+     * Counts messages handled by the state machine, and measures how long
+     * each drain of a lane blocks the main thread.
+     */
+    private static class CountingTracer extends PermissiveTracer {
+        private static final String PROCESS_PENDING_ACTIONS = "Permissive.processPendingActions";
+
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final ArrayDeque<String> names = new ArrayDeque<>();
+        private final ArrayDeque<Long> starts = new ArrayDeque<>();
+        int messages;
+        long maxDrainNanos;
+
+        void reset() {
+            counts.clear();
+            messages = 0;
+            maxDrainNanos = 0;
+        }
+
+        @Override
+        public void beginSection(String sectionName) {
+            names.push(sectionName);
+            starts.push(System.nanoTime());
+        }
+
+        @Override
+        public void endSection() {
+            final String name = names.pop();
+            final long duration = System.nanoTime() - starts.pop();
+            if (PROCESS_PENDING_ACTIONS.equals(name)) {
+                maxDrainNanos = Math.max(maxDrainNanos, duration);
+            }
+        }
+
+        int count(String name) {
+            final Integer count = counts.get(name);
+            return count != null ? count : 0;
+        }
+
+        @Override
+        public void setCounter(String counterName, long counterValue) {
+            // called once per handled message
+            counts.put(counterName, count(counterName) + 1);
+            ++messages;
+        }
+    }
+
+    private static class Round {
+        final int operations;
+        final int messages;
+        final long elapsedNanos;
+        final long maxDrainNanos;
+        final long peakHeap;
+
+        Round(int operations, int messages, long elapsedNanos, long maxDrainNanos, long peakHeap) {
+            this.operations = operations;
+            this.messages = messages;
+            this.elapsedNanos = elapsedNanos;
+            this.maxDrainNanos = maxDrainNanos;
+            this.peakHeap = peakHeap;
+        }
+
+        @Override
+        public String toString() {
+            return operations + " operations: " + messages + " messages, "
+                + (long) (messages * 1e9 / Math.max(elapsedNanos, 1)) + " msg/s, "
+                + "worst drain " + maxDrainNanos / 1000 + "us, "
+                + "peak retained heap " + peakHeap / 1024 + "KiB";
+        }
+    }
+}
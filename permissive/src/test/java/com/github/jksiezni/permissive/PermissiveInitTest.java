@@ -0,0 +1,172 @@
+package com.github.jksiezni.permissive;
+
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class PermissiveInitTest {
+
+    private static final String INIT_THREAD = "Permissive-init";
+    private static int testCount;
+
+    /* permissions unknown to other tests, so the process-wide group index can't know them yet */
+    private final String granted = "com.github.jksiezni.permissive.test.permission.GRANTED" + testCount;
+    private final String denied = "com.github.jksiezni.permissive.test.permission.DENIED" + testCount;
+    private final String group = "com.github.jksiezni.permissive.test.permission-group.INIT" + testCount++;
+
+    private Application application;
+    private PackageManager packageManager;
+    private PackageInfo packageInfo;
+
+    @Before
+    public void setUp() throws Exception {
+        packageInfo = new PackageInfo();
+        packageInfo.requestedPermissions = new String[]{granted, denied};
+        packageInfo.requestedPermissionsFlags = new int[]{PackageInfo.REQUESTED_PERMISSION_GRANTED, 0};
+        packageManager = mock(PackageManager.class);
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(packageInfo);
+        when(packageManager.getPermissionInfo(granted, 0)).thenReturn(dangerous(granted));
+        when(packageManager.getPermissionInfo(denied, 0)).thenReturn(dangerous(denied));
+        when(packageManager.queryPermissionsByGroup(group, 0)).thenReturn(Arrays.asList(dangerous(granted), dangerous(denied)));
+        application = mock(Application.class);
+        when(application.getPackageName()).thenReturn("com.github.jksiezni.permissive.test");
+        when(application.getPackageManager()).thenReturn(packageManager);
+        when(application.checkPermission(eq(granted), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_GRANTED);
+        when(application.checkPermission(eq(denied), anyInt(), anyInt())).thenReturn(PackageManager.PERMISSION_DENIED);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testInitIsIdempotent() throws Exception {
+        Permissive.init(application);
+        joinInitThread();
+
+        final Application other = mock(Application.class);
+        Permissive.init(other);
+
+        verifyZeroInteractions(other);
+        assertFalse(isInitThreadAlive());
+    }
+
+    @Test
+    public void testPrefetchPopulatesCacheAndGroups() throws Exception {
+        Permissive.prefetch(application);
+
+        assertTrue(Permissive.manifest.isLoaded());
+        assertTrue(Permissive.checkPermission(application, granted));
+        assertFalse(Permissive.checkPermission(application, denied));
+        assertEquals(group, Permissive.permissionGroups.groupOf(application, denied));
+        assertTrue(Permissive.permissionGroups.isGrantedByGroup(application, denied));
+
+        // everything is answered from memory
+        verify(packageManager, times(1)).getPackageInfo(anyString(), anyInt());
+        verify(packageManager, times(1)).getPermissionInfo(granted, 0);
+        verify(packageManager, never()).getPermissionInfo(denied, 0);
+        verify(packageManager, times(1)).queryPermissionsByGroup(group, 0);
+        verify(application, never()).checkPermission(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testChecksAreCorrectBeforePrefetchFinishes() throws Exception {
+        final CountDownLatch prefetchStarted = new CountDownLatch(1);
+        final CountDownLatch releasePrefetch = new CountDownLatch(1);
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenAnswer(new Answer<PackageInfo>() {
+            @Override
+            public PackageInfo answer(InvocationOnMock invocation) throws Throwable {
+                if (INIT_THREAD.equals(Thread.currentThread().getName())) {
+                    prefetchStarted.countDown();
+                    releasePrefetch.await(5, TimeUnit.SECONDS);
+                }
+                return packageInfo;
+            }
+        });
+        final Thread prefetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Permissive.prefetch(application);
+            }
+        }, INIT_THREAD);
+        prefetch.start();
+        assertTrue(prefetchStarted.await(5, TimeUnit.SECONDS));
+
+        // the prefetch is stalled in the middle, so checks can't depend on it
+        assertTrue(Permissive.checkPermission(application, granted));
+        assertArrayEquals(new String[]{denied},
+            Permissive.filterPermissions(application, new String[]{granted, denied}, PackageManager.PERMISSION_DENIED));
+
+        releasePrefetch.countDown();
+        prefetch.join(5000);
+        assertFalse(prefetch.isAlive());
+
+        assertTrue(Permissive.checkPermission(application, granted));
+        assertFalse(Permissive.checkPermission(application, denied));
+        assertTrue(Permissive.permissionGroups.isGrantedByGroup(application, denied));
+    }
+
+    private PermissionInfo dangerous(String permission) {
+        final PermissionInfo info = new PermissionInfo();
+        info.name = permission;
+        info.group = group;
+        info.protectionLevel = PermissionInfo.PROTECTION_DANGEROUS;
+        return info;
+    }
+
+    /**
+     * Waits for the prefetch started by {@link Permissive#init(Application)}, so it doesn't leak into other tests.
+     */
+    private static void joinInitThread() throws InterruptedException {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (INIT_THREAD.equals(thread.getName())) {
+                thread.join(5000);
+            }
+        }
+    }
+
+    private static boolean isInitThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (INIT_THREAD.equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class PermissiveTracerTest {
+
+    private static final String TRACE_ACTION = "Permissive.Action";
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};
+
+    private final RecordingTracer tracer = new RecordingTracer();
+    private Activity activity;
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = PERMISSIONS;
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).denyPermissions(PERMISSIONS);
+        Permissive.invalidatePermissionCache();
+        Permissive.setTracer(tracer);
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.setTracer(null);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testCompletedActionEndsItsTrace() {
+        final Permissive.Request request = new Permissive.Request(PERMISSIONS[0]);
+        request.execute(activity);
+        idleMainLooper();
+        final int cookie = request.traceCookie;
+        assertTrue(cookie != 0);
+        assertEquals(setOf(cookie), tracer.openAsyncSections);
+
+        answerDialog(PackageManager.PERMISSION_GRANTED);
+
+        assertEquals(Arrays.asList(cookie), tracer.begunCookies);
+        assertEquals(Arrays.asList(cookie), tracer.endedCookies);
+        tracer.assertBalanced();
+    }
+
+    @Test
+    public void testCanceledActionEndsItsTrace() {
+        new Permissive.Request(PERMISSIONS[0]).execute(activity);
+        final Permissive.Request canceled = new Permissive.Request(PERMISSIONS[1]);
+        final PermissiveFuture future = canceled.executeAsync(activity);
+        idleMainLooper();
+        final int cookie = canceled.traceCookie;
+        assertTrue(cookie != 0);
+
+        assertTrue(future.cancel(false));
+        idleMainLooper();
+
+        assertEquals(Arrays.asList(cookie), tracer.endedCookies);
+        assertEquals(1, tracer.openAsyncSections.size());
+
+        answerDialog(PackageManager.PERMISSION_DENIED);
+
+        assertEquals(2, tracer.begunCookies.size());
+        assertEquals(new HashSet<>(tracer.begunCookies), new HashSet<>(tracer.endedCookies));
+        assertFalse(Permissive.hasPendingActions());
+        tracer.assertBalanced();
+    }
+
+    @Test
+    public void testTimedOutActionEndsItsTrace() {
+        final Permissive.Request request = new Permissive.Request(PERMISSIONS[0]).withTimeout(1000);
+        request.execute(activity);
+        idleMainLooper();
+        final int cookie = request.traceCookie;
+        assertTrue(cookie != 0);
+
+        shadowOf(Looper.getMainLooper()).idleFor(1000, TimeUnit.MILLISECONDS);
+
+        assertFalse(Permissive.hasPendingActions());
+        assertEquals(Arrays.asList(cookie), tracer.begunCookies);
+        assertEquals(Arrays.asList(cookie), tracer.endedCookies);
+        tracer.assertBalanced();
+    }
+
+    @Test
+    public void testNothingIsTracedWhenDisabled() {
+        Permissive.setTracer(null);
+        final Permissive.Request request = new Permissive.Request(PERMISSIONS[0]);
+        request.execute(activity);
+        idleMainLooper();
+        assertEquals(0, request.traceCookie);
+
+        answerDialog(PackageManager.PERMISSION_GRANTED);
+
+        assertTrue(tracer.begunCookies.isEmpty());
+        assertTrue(tracer.sections.isEmpty());
+        assertEquals(0, tracer.events);
+    }
+
+    private void answerDialog(int grantResult) {
+        final PermissiveFragment fragment = (PermissiveFragment) activity.getFragmentManager()
+            .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+        assertNotNull(fragment);
+        final String[] permissions = fragment.getArguments().getStringArray("permissions");
+        final int[] grantResults = new int[permissions.length];
+        Arrays.fill(grantResults, grantResult);
+        fragment.onRequestPermissionsResult(42, permissions, grantResults);
+        idleMainLooper();
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static Set<Integer> setOf(Integer... cookies) {
+        return new HashSet<>(Arrays.asList(cookies));
+    }
+
+    private static final class RecordingTracer extends PermissiveTracer {
+
+        final List<String> sections = new ArrayList<>();
+        final List<Integer> begunCookies = new ArrayList<>();
+        final List<Integer> endedCookies = new ArrayList<>();
+        final Set<Integer> openAsyncSections = new HashSet<>();
+        int events;
+
+        @Override
+        public void beginSection(String name) {
+            events++;
+            sections.add(name);
+        }
+
+        @Override
+        public void endSection() {
+            events++;
+            assertFalse("a section ended without a beginning", sections.isEmpty());
+            sections.remove(sections.size() - 1);
+        }
+
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+            events++;
+            assertEquals(TRACE_ACTION, name);
+            assertTrue("a cookie is reused: " + cookie, openAsyncSections.add(cookie));
+            begunCookies.add(cookie);
+        }
+
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+            events++;
+            assertEquals(TRACE_ACTION, name);
+            assertTrue("no section is open for a cookie: " + cookie, openAsyncSections.remove(cookie));
+            endedCookies.add(cookie);
+        }
+
+        @Override
+        public void setCounter(String name, long value) {
+            events++;
+        }
+
+        void assertBalanced() {
+            assertTrue("unfinished sections: " + sections, sections.isEmpty());
+            assertTrue("unfinished actions: " + openAsyncSections, openAsyncSections.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.jksiezni.permissive;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RationaleRegistryTest {
+
+    private static final String PREFIX = "com.example.registry.";
+    private static final String GROUP = "com.example.registry.group.LOCATION";
+    private static final String GROUPED_PERMISSION = PREFIX + "FINE_LOCATION";
+    private static final String OTHER_PERMISSION = PREFIX + "special.CAMERA";
+
+    @Mock
+    Context mockContext;
+
+    @Mock
+    PackageManager mockPackageManager;
+
+    private RationaleRegistry registry;
+
+    @Before
+    public void setup() throws Exception {
+        registry = new RationaleRegistry();
+        PermissionInfo info = new PermissionInfo();
+        info.group = GROUP;
+        when(mockContext.getPackageManager()).thenReturn(mockPackageManager);
+        when(mockPackageManager.getPermissionInfo(eq(GROUPED_PERMISSION), anyInt())).thenReturn(info);
+        when(mockPackageManager.getPermissionInfo(eq(OTHER_PERMISSION), anyInt()))
+                .thenThrow(new PackageManager.NameNotFoundException());
+    }
+
+    @Test
+    public void testPrecedence() {
+        Rationale byPrefix = mock(Rationale.class);
+        Rationale byGroup = mock(Rationale.class);
+        Rationale byPermission = mock(Rationale.class);
+
+        registry.registerForPrefix(PREFIX, byPrefix);
+        assertSame(byPrefix, registry.resolve(mockContext, GROUPED_PERMISSION));
+
+        registry.registerForGroup(GROUP, byGroup);
+        assertSame(byGroup, registry.resolve(mockContext, GROUPED_PERMISSION));
+        assertSame(byPrefix, registry.resolve(mockContext, OTHER_PERMISSION));
+
+        registry.registerForPermission(GROUPED_PERMISSION, byPermission);
+        assertSame(byPermission, registry.resolve(mockContext, GROUPED_PERMISSION));
+
+        registry.registerForPermission(GROUPED_PERMISSION, null);
+        assertSame(byGroup, registry.resolve(mockContext, GROUPED_PERMISSION));
+    }
+
+    @Test
+    public void testLongestPrefixWins() {
+        Rationale general = mock(Rationale.class);
+        Rationale special = mock(Rationale.class);
+        registry.registerForPrefix(PREFIX, general);
+        registry.registerForPrefix(PREFIX + "special.", special);
+
+        assertSame(special, registry.resolve(mockContext, OTHER_PERMISSION));
+        assertSame(general, registry.resolve(mockContext, GROUPED_PERMISSION));
+        assertNull(registry.resolve(mockContext, "com.example.other.PERMISSION"));
+    }
+
+    @Test
+    public void testResolvedPermissionsAreMemoized() throws Exception {
+        final String permission = PREFIX + "memoized.PERMISSION";
+        registry.registerForGroup(GROUP, mock(Rationale.class));
+        registry.resolve(mockContext, permission);
+        registry.resolve(mockContext, permission);
+        registry.resolveAll(mockContext, new String[]{permission});
+        verify(mockPackageManager, times(1)).getPermissionInfo(eq(permission), anyInt());
+    }
+}
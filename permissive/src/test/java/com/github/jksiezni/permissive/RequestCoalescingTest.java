@@ -0,0 +1,184 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class RequestCoalescingTest {
+
+    private static final String CAMERA = Manifest.permission.CAMERA;
+    private static final String RECORD_AUDIO = Manifest.permission.RECORD_AUDIO;
+    private static final String READ_CONTACTS = Manifest.permission.READ_CONTACTS;
+    private static final long WINDOW = 100;
+
+    private final List<String> calls = new ArrayList<>();
+    private final List<String> rationales = new ArrayList<>();
+    /* listeners are held by weak references, so keep them here */
+    private final List<PermissionsResultListener> listeners = new ArrayList<>();
+
+    private final Rationale rationale = new Rationale() {
+        @Override
+        public void onShowRationale(Activity activity, String[] allowablePermissions, PermissiveMessenger messenger) {
+            rationales.add(Arrays.toString(messenger.getRequestedPermissions()));
+            messenger.cancelRequest();
+        }
+    };
+
+    private Activity activity;
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = new String[]{CAMERA, RECORD_AUDIO, READ_CONTACTS};
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).denyPermissions(CAMERA, RECORD_AUDIO, READ_CONTACTS);
+        Permissive.invalidatePermissionCache();
+        Permissive.setRequestCoalescingWindow(WINDOW);
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.setRequestCoalescingWindow(0);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testPendingRequestsAreAskedWithSingleDialog() {
+        execute(new Permissive.Request(CAMERA), "R1");
+        execute(new Permissive.Request(RECORD_AUDIO), "R2");
+        execute(new Permissive.Request(CAMERA, READ_CONTACTS), "R3");
+        waitForWindow();
+
+        assertEquals(new HashSet<>(Arrays.asList(CAMERA, RECORD_AUDIO, READ_CONTACTS)),
+            new HashSet<>(Arrays.asList(findFragment().getArguments().getStringArray("permissions"))));
+        assertEquals(3, Permissive.getPendingActionsCount(activity));
+    }
+
+    @Test
+    public void testPartialGrantIsDeliveredToEachRequest() {
+        execute(new Permissive.Request(CAMERA), "R1");
+        execute(new Permissive.Request(RECORD_AUDIO), "R2");
+        execute(new Permissive.Request(CAMERA, READ_CONTACTS), "R3");
+        waitForWindow();
+
+        answerDialog(CAMERA, READ_CONTACTS);
+
+        assertEquals(new HashSet<>(Arrays.asList(
+            result("R1", new String[]{CAMERA}, new String[0]),
+            result("R2", new String[0], new String[]{RECORD_AUDIO}),
+            result("R3", new String[]{CAMERA, READ_CONTACTS}, new String[0]))),
+            new HashSet<>(calls));
+        assertEquals(3, calls.size());
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    @Test
+    public void testRationaleFirstRequestIsNotMerged() {
+        execute(new Permissive.Request(CAMERA), "R1");
+        execute(new Permissive.Request(RECORD_AUDIO).withRationale(rationale).showRationaleFirst(true), "R2");
+        waitForWindow();
+
+        assertArrayEquals(new String[]{CAMERA}, findFragment().getArguments().getStringArray("permissions"));
+
+        answerDialog();
+        // the rationale is displayed before any dialog of the second request
+        assertEquals(Arrays.asList("[" + RECORD_AUDIO + "]"), rationales);
+        assertEquals(Arrays.asList(
+            result("R1", new String[0], new String[]{CAMERA}),
+            result("R2", new String[0], new String[]{RECORD_AUDIO})), calls);
+    }
+
+    @Test
+    public void testDifferentlyScopedRequestIsNotMerged() {
+        execute(new Permissive.Request(CAMERA), "R1");
+        final Permissive.Request scoped = new Permissive.Request(RECORD_AUDIO);
+        scoped.scopedTo(activity, "scoped");
+        execute(scoped, "R2");
+        waitForWindow();
+
+        assertArrayEquals(new String[]{CAMERA}, findFragment().getArguments().getStringArray("permissions"));
+
+        answerDialog();
+        assertArrayEquals(new String[]{RECORD_AUDIO}, findFragment().getArguments().getStringArray("permissions"));
+        answerDialog();
+        assertEquals(Arrays.asList(
+            result("R1", new String[0], new String[]{CAMERA}),
+            result("R2", new String[0], new String[]{RECORD_AUDIO})), calls);
+    }
+
+    private void execute(Permissive.Request request, final String name) {
+        final PermissionsResultListener listener = new PermissionsResultListener() {
+            @Override
+            public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+                calls.add(result(name, grantedPermissions, refusedPermissions));
+            }
+        };
+        listeners.add(listener);
+        request.whenPermissionsResultReceived(listener);
+        request.execute(activity);
+    }
+
+    private static String result(String name, String[] grantedPermissions, String[] refusedPermissions) {
+        return name + " granted " + Arrays.toString(grantedPermissions) + " refused " + Arrays.toString(refusedPermissions);
+    }
+
+    private PermissiveFragment findFragment() {
+        final PermissiveFragment fragment = (PermissiveFragment) activity.getFragmentManager()
+            .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+        assertNotNull(fragment);
+        return fragment;
+    }
+
+    /**
+     * Answers the displayed dialog, so only given permissions are granted.
+     */
+    private void answerDialog(String... granted) {
+        final PermissiveFragment fragment = findFragment();
+        final String[] permissions = fragment.getArguments().getStringArray("permissions");
+        final int[] grantResults = new int[permissions.length];
+        for (int i = 0; i < permissions.length; ++i) {
+            grantResults[i] = Arrays.asList(granted).contains(permissions[i])
+                ? PackageManager.PERMISSION_GRANTED
+                : PackageManager.PERMISSION_DENIED;
+        }
+        fragment.onRequestPermissionsResult(42, permissions, grantResults);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static void waitForWindow() {
+        shadowOf(Looper.getMainLooper()).idleFor(WINDOW, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class RequestLanesTest {
+
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};
+
+    private final List<String> calls = new ArrayList<>();
+    /* listeners are held by weak references, so keep them here */
+    private final List<PermissionsResultListener> listeners = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = PERMISSIONS;
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).denyPermissions(PERMISSIONS);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testRequestAfterRotationQueuesBehindRetainedFragment() {
+        final ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+        execute(new Permissive.Request(PERMISSIONS[0]), controller.get(), "R1");
+        idleMainLooper();
+        final PermissiveFragment fragment = findFragment(controller.get());
+        assertNotNull(fragment);
+
+        // the recreated Activity executes a request, before the retained fragment restores its lane
+        shadowOf(Looper.getMainLooper()).pause();
+        controller.recreate();
+        final Activity recreated = controller.get();
+        execute(new Permissive.Request(PERMISSIONS[1]), recreated, "R2");
+        idleMainLooper();
+
+        // the fragment still waits for the result of the first request
+        assertSame(fragment, findFragment(recreated));
+        assertEquals(2, Permissive.getPendingActionsCount(recreated));
+
+        answerDialog(recreated);
+        assertEquals(Arrays.asList("R1"), calls);
+
+        execute(new Permissive.Request(PERMISSIONS[0]), recreated, "R3");
+        idleMainLooper();
+        answerDialog(recreated);
+        answerDialog(recreated);
+        assertEquals(Arrays.asList("R1", "R2", "R3"), calls);
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    @Test
+    public void testPendingActionsAreCountedOnOtherThreads() throws Exception {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        execute(new Permissive.Request(PERMISSIONS[0]), activity, "R1");
+        execute(new Permissive.Request(PERMISSIONS[1]), activity, "R2");
+        idleMainLooper();
+        assertEquals(2, countOnOtherThread(activity));
+
+        answerDialog(activity);
+        assertEquals(1, countOnOtherThread(activity));
+        answerDialog(activity);
+        assertEquals(0, countOnOtherThread(activity));
+        assertEquals(Arrays.asList("R1", "R2"), calls);
+    }
+
+    /**
+     * @return A number of pending actions seen by a background thread, or -1 when it disagrees with {@code hasPendingActions()}.
+     */
+    private static int countOnOtherThread(final Activity activity) throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final int pending = Permissive.getPendingActionsCount(activity);
+                count.set(Permissive.hasPendingActions() == (pending > 0) ? pending : -1);
+            }
+        });
+        thread.start();
+        thread.join();
+        return count.get();
+    }
+
+    private void execute(Permissive.Request request, Activity activity, final String name) {
+        final PermissionsResultListener listener = new PermissionsResultListener() {
+            @Override
+            public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+                calls.add(name);
+            }
+        };
+        listeners.add(listener);
+        request.whenPermissionsResultReceived(listener);
+        request.execute(activity);
+    }
+
+    private static PermissiveFragment findFragment(Activity activity) {
+        return (PermissiveFragment) activity.getFragmentManager().findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+    }
+
+    private static void answerDialog(Activity activity) {
+        final PermissiveFragment fragment = findFragment(activity);
+        assertNotNull(fragment);
+        final String[] permissions = fragment.getArguments().getStringArray("permissions");
+        final int[] grantResults = new int[permissions.length];
+        Arrays.fill(grantResults, PackageManager.PERMISSION_DENIED);
+        fragment.onRequestPermissionsResult(42, permissions, grantResults);
+        idleMainLooper();
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
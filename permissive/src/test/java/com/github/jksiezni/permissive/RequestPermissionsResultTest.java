@@ -6,6 +6,9 @@ import android.content.pm.PackageManager;
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -44,8 +47,8 @@ public class RequestPermissionsResultTest {
                 PackageManager.PERMISSION_GRANTED,
                 PackageManager.PERMISSION_GRANTED
         });
-        assertArrayEquals(permissions, request.grantedPermissions);
-        assertTrue(request.refusedPermissions.length == 0);
+        assertArrayEquals(permissions, request.grantedPermissions());
+        assertTrue(request.refusedPermissions().length == 0);
     }
 
     @Test
@@ -56,8 +59,8 @@ public class RequestPermissionsResultTest {
                 PackageManager.PERMISSION_DENIED,
                 PackageManager.PERMISSION_DENIED
         });
-        assertArrayEquals(permissions, request.refusedPermissions);
-        assertTrue(request.grantedPermissions.length == 0);
+        assertArrayEquals(permissions, request.refusedPermissions());
+        assertTrue(request.grantedPermissions().length == 0);
     }
 
     @Test
@@ -70,7 +73,37 @@ public class RequestPermissionsResultTest {
         });
         final String[] expectGranted = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_NETWORK_STATE};
         final String[] expectRefused = {Manifest.permission.ACCESS_WIFI_STATE, Manifest.permission.ACCOUNT_MANAGER};
-        assertArrayEquals(expectGranted, request.grantedPermissions);
-        assertArrayEquals(expectRefused, request.refusedPermissions);
+        assertArrayEquals(expectGranted, request.grantedPermissions());
+        assertArrayEquals(expectRefused, request.refusedPermissions());
+    }
+
+    @Test
+    public void testViewsAreSharedWithoutCopying() {
+        RequestPermissionsResult request = new RequestPermissionsResult(permissions, new int[]{
+                PackageManager.PERMISSION_GRANTED,
+                PackageManager.PERMISSION_DENIED,
+                PackageManager.PERMISSION_GRANTED,
+                PackageManager.PERMISSION_DENIED
+        });
+        assertSame(request.grantedPermissions(), request.grantedPermissions());
+        assertSame(request.refusedPermissions(), request.refusedPermissions());
+        assertEquals(2, request.getGrantedCount());
+        assertTrue(request.isGranted(Manifest.permission.ACCESS_WIFI_STATE));
+        assertFalse(request.isGranted(Manifest.permission.ACCOUNT_MANAGER));
+    }
+
+    @Test
+    public void testManyPermissions() {
+        final String[] many = new String[100];
+        final int[] grantResults = new int[many.length];
+        for (int i = 0; i < many.length; ++i) {
+            many[i] = "com.example.permission.P" + i;
+            grantResults[i] = i % 3 == 0 ? PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+        }
+        RequestPermissionsResult request = new RequestPermissionsResult(many, grantResults);
+        assertEquals(34, request.grantedPermissions().length);
+        assertEquals(66, request.refusedPermissions().length);
+        assertTrue(request.isGranted("com.example.permission.P99"));
+        assertFalse(request.isGranted("com.example.permission.P98"));
     }
 }
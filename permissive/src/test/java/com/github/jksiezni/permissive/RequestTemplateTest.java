@@ -0,0 +1,67 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ */
+public class RequestTemplateTest {
+
+    private static final Permissive.RequestTemplate TEMPLATE =
+        new Permissive.RequestTemplate(Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO);
+
+    @Test
+    public void testTemplateIsImmutable() {
+        Rationale rationale = mock(Rationale.class);
+        Permissive.RequestTemplate withRationale = TEMPLATE.withRationale(rationale).showRationaleFirst(true).withTimeout(1000);
+
+        assertNotSame(TEMPLATE, withRationale);
+        assertNull(TEMPLATE.getRationale());
+        assertSame(rationale, withRationale.getRationale());
+        assertSame(TEMPLATE.getPermissionSet(), withRationale.getPermissionSet());
+    }
+
+    @Test
+    public void testRequestsShareTemplateData() {
+        Rationale rationale = mock(Rationale.class);
+        Permissive.RequestTemplate template = TEMPLATE.withRationale(rationale).showRationaleFirst(true).withTimeout(1000);
+
+        Permissive.Request first = template.newRequest();
+        Permissive.Request second = template.newRequest();
+        assertNotSame(first, second);
+        assertSame(template.getPermissionSet(), first.getPermissionSet());
+        assertArrayEquals(template.getPermissions(), first.getPermissions());
+        assertSame(rationale, first.getRationale());
+        assertTrue(first.shouldDisplayRationaleFirst());
+        assertEquals(1000, first.getTimeout());
+    }
+
+    @Test
+    public void testRequestDoesNotShareTemplatePermissions() {
+        Permissive.Request request = TEMPLATE.newRequest();
+        request.getPermissions()[0] = Manifest.permission.READ_CONTACTS;
+
+        assertEquals(Manifest.permission.CAMERA, TEMPLATE.getPermissions()[0]);
+        assertEquals(Manifest.permission.CAMERA, TEMPLATE.newRequest().getPermissions()[0]);
+    }
+
+    @Test
+    public void testRequestStateIsPerExecution() {
+        Permissive.Request first = TEMPLATE.newRequest();
+        Permissive.Request second = TEMPLATE.newRequest();
+        first.shouldDisplayRationale(false);
+        assertFalse(first.shouldDisplayRationale());
+        assertTrue(second.shouldDisplayRationale());
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class RequestTimeoutTest {
+
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};
+
+    private long reportedTimeout;
+    private String[] refused;
+
+    private final PermissiveMetrics metrics = new PermissiveMetrics() {
+        @Override
+        public void onStageTimeout(Permissive.Request request, long timeoutMillis) {
+            reportedTimeout = timeoutMillis;
+        }
+    };
+
+    private final List<PermissiveMessenger> messengers = new ArrayList<>();
+
+    private final Rationale rationale = new Rationale() {
+        @Override
+        public void onShowRationale(Activity activity, String[] allowablePermissions, PermissiveMessenger messenger) {
+            messengers.add(messenger);
+        }
+    };
+
+    private final PermissionsRefusedListener refusedListener = new PermissionsRefusedListener() {
+        @Override
+        public void onPermissionsRefused(String[] permissions) {
+            refused = permissions;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = PERMISSIONS;
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).denyPermissions(PERMISSIONS);
+        Permissive.invalidatePermissionCache();
+        Permissive.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.setMetrics(null);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testStalledRequestRemovesItsFragment() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        final Permissive.Request request = new Permissive.Request(Manifest.permission.CAMERA).withTimeout(1000);
+        request.whenPermissionsRefused(refusedListener);
+        request.execute(activity);
+        idleMainLooper();
+        final PermissiveFragment stale = findFragment(activity);
+        assertNotNull(stale);
+
+        shadowOf(Looper.getMainLooper()).idleFor(1000, TimeUnit.MILLISECONDS);
+
+        assertEquals(1000, reportedTimeout);
+        assertArrayEquals(new String[]{Manifest.permission.CAMERA}, refused);
+        assertNull(findFragment(activity));
+        assertFalse(Permissive.hasPendingActions());
+
+        // the next request gets its own fragment, so a late result of the canceled one can't reach it
+        new Permissive.Request(Manifest.permission.RECORD_AUDIO).execute(activity);
+        idleMainLooper();
+        final PermissiveFragment fragment = findFragment(activity);
+        assertNotNull(fragment);
+        assertNotSame(stale, fragment);
+        assertArrayEquals(new String[]{Manifest.permission.RECORD_AUDIO},
+            fragment.getArguments().getStringArray("permissions"));
+    }
+
+    @Test
+    public void testLateRepeatOfTimedOutRequestIsDropped() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        final Permissive.Request stalled = new Permissive.Request(Manifest.permission.CAMERA)
+            .withRationale(rationale)
+            .showRationaleFirst(true)
+            .withTimeout(1000);
+        stalled.whenPermissionsRefused(refusedListener);
+        stalled.execute(activity);
+        new Permissive.Request(Manifest.permission.RECORD_AUDIO)
+            .withRationale(rationale)
+            .showRationaleFirst(true)
+            .execute(activity);
+        idleMainLooper();
+        assertEquals(1, messengers.size());
+
+        shadowOf(Looper.getMainLooper()).idleFor(1000, TimeUnit.MILLISECONDS);
+        assertArrayEquals(new String[]{Manifest.permission.CAMERA}, refused);
+        // the next request displays its own rationale
+        assertEquals(2, messengers.size());
+
+        // the user answers the rationale of the timed out request, which must not repeat the next one
+        assertTrue(messengers.get(0).repeatRequest());
+        idleMainLooper();
+        assertNull(findFragment(activity));
+        assertTrue(Permissive.hasPendingActions());
+
+        assertTrue(messengers.get(1).cancelRequest());
+        idleMainLooper();
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    private static PermissiveFragment findFragment(Activity activity) {
+        return (PermissiveFragment) activity.getFragmentManager().findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class SavedRequestsTest {
+
+    private static final String STATE_KEY = "com.github.jksiezni.permissive.saved_requests";
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};
+
+    private String[] granted;
+
+    private final PermissionsResultListener listener = new PermissionsResultListener() {
+        @Override
+        public void onPermissionsResult(String[] grantedPermissions, String[] refusedPermissions) {
+            granted = grantedPermissions;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        final Application application = RuntimeEnvironment.application;
+        final PackageInfo packageInfo = shadowOf(application.getPackageManager())
+            .getInternalMutablePackageInfo(application.getPackageName());
+        packageInfo.requestedPermissions = PERMISSIONS;
+        packageInfo.requestedPermissionsFlags = null;
+        shadowOf(application).denyPermissions(PERMISSIONS);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testPendingRequestIsRestoredAfterProcessDeath() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        new Permissive.Request(Manifest.permission.CAMERA).execute(activity);
+        new Permissive.Request(Manifest.permission.RECORD_AUDIO).scopedTo(activity, "audio").execute(activity);
+        idleMainLooper();
+
+        final Bundle outState = new Bundle();
+        SavedRequests.save(activity, outState);
+        final Bundle state = outState.getBundle(STATE_KEY);
+        assertNotNull(state);
+        // pretend, that the process was killed
+        state.putString("process", "killed");
+
+        final Activity restored = Robolectric.buildActivity(Activity.class).setup().get();
+        SavedRequests.restore(restored, outState);
+        idleMainLooper();
+        assertTrue(Permissive.reattachListener(restored, "audio", listener));
+
+        answerDialog(restored, PackageManager.PERMISSION_GRANTED);
+        assertArrayEquals(new String[]{Manifest.permission.RECORD_AUDIO}, granted);
+
+        // the original requests are still processed with the first activity
+        answerDialog(activity, PackageManager.PERMISSION_DENIED);
+        assertFalse(Permissive.hasPendingActions());
+    }
+
+    @Test
+    public void testCoalescedRequestIsSaved() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        shadowOf(Looper.getMainLooper()).pause();
+        new Permissive.Request(Manifest.permission.CAMERA).execute(activity);
+        new Permissive.Request(Manifest.permission.RECORD_AUDIO).scopedTo(activity, "audio").execute(activity);
+        idleMainLooper();
+        final PermissiveFragment fragment = (PermissiveFragment) activity.getFragmentManager()
+            .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+        // both requests are asked with a single dialog
+        assertArrayEquals(PERMISSIONS, fragment.getArguments().getStringArray("permissions"));
+
+        final Bundle outState = new Bundle();
+        SavedRequests.save(activity, outState);
+        final Bundle state = outState.getBundle(STATE_KEY);
+        assertNotNull(state);
+        assertArrayEquals(new String[]{"audio"}, state.getStringArray("keys"));
+        assertArrayEquals(new String[]{Manifest.permission.RECORD_AUDIO}, state.getStringArray("permissions"));
+
+        shadowOf(Looper.getMainLooper()).unPause();
+        answerDialog(activity, PackageManager.PERMISSION_DENIED);
+    }
+
+    @Test
+    public void testCancelledRequestReleasesItsScope() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        new Permissive.Request(Manifest.permission.CAMERA).execute(activity);
+        final Permissive.Request request = new Permissive.Request(Manifest.permission.RECORD_AUDIO);
+        final PermissiveFuture future = request.scopedTo(activity, "audio").executeAsync(activity);
+        idleMainLooper();
+        assertNotNull(request.scope);
+
+        assertTrue(future.cancel(false));
+        idleMainLooper();
+        assertNull(request.scope);
+
+        final Bundle outState = new Bundle();
+        SavedRequests.save(activity, outState);
+        assertNull(outState.getBundle(STATE_KEY));
+        answerDialog(activity, PackageManager.PERMISSION_DENIED);
+    }
+
+    private static void answerDialog(Activity activity, int grantResult) {
+        final PermissiveFragment fragment = (PermissiveFragment) activity.getFragmentManager()
+            .findFragmentByTag(Permissive.PERMISSIVE_FRAGMENT_TAG);
+        if (fragment == null || !fragment.isResumed()) {
+            return;
+        }
+        final String[] permissions = fragment.getArguments().getStringArray("permissions");
+        final int[] grantResults = new int[permissions.length];
+        Arrays.fill(grantResults, grantResult);
+        fragment.onRequestPermissionsResult(42, permissions, grantResults);
+        idleMainLooper();
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.jksiezni.permissive;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.M)
+public class UndeclaredPermissionsTest {
+
+    private static final String DECLARED = Manifest.permission.CAMERA;
+    private static final String UNDECLARED = Manifest.permission.RECORD_AUDIO;
+    private static final int CHECKS = 10;
+
+    private Context context;
+    private PackageManager packageManager;
+
+    @Before
+    public void setUp() throws Exception {
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.requestedPermissions = new String[]{DECLARED};
+        packageInfo.requestedPermissionsFlags = new int[]{PackageInfo.REQUESTED_PERMISSION_GRANTED};
+        packageManager = mock(PackageManager.class);
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(packageInfo);
+        context = mock(Context.class);
+        when(context.getPackageName()).thenReturn("com.github.jksiezni.permissive.test");
+        when(context.getPackageManager()).thenReturn(packageManager);
+        Permissive.invalidatePermissionCache();
+    }
+
+    @After
+    public void tearDown() {
+        Permissive.invalidatePermissionCache();
+    }
+
+    @Test
+    public void testUndeclaredPermissionsAreFetchedOnce() throws Exception {
+        final String[] permissions = {DECLARED, UNDECLARED};
+        for (int i = 0; i < CHECKS; ++i) {
+            assertArrayEquals(new String[]{UNDECLARED},
+                Permissive.filterPermissions(context, permissions, PackageManager.PERMISSION_DENIED));
+            assertEquals(1L, Permissive.permissionCache.checkGrantVector(context, permissions)[0]);
+        }
+        verify(packageManager, times(1)).getPackageInfo(anyString(), anyInt());
+        verify(context, never()).checkPermission(anyString(), anyInt(), anyInt());
+    }
+}
@@ -17,7 +17,6 @@ package com.github.jksiezni.permissive.sample;
 
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
@@ -29,6 +28,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 
+import com.github.jksiezni.permissive.PermissionStateObserver;
 import com.github.jksiezni.permissive.Permissive;
 import com.github.jksiezni.permissive.fragments.RationaleFragment;
 
@@ -79,15 +79,27 @@ public class EducateUpFrontFragment extends RationaleFragment {
 
   }
 
-  @Override
-  public void onResume() {
-    super.onResume();
-    if (Permissive.filterPermissions(getContext(),
-            getPermissiveMessenger().getRequestedPermissions(),
-            PackageManager.PERMISSION_GRANTED).length > 0) {
-      // if user granted permission via Settings, then finish this fragment
-      finishFragment();
+  private final PermissionStateObserver.Listener stateListener = new PermissionStateObserver.Listener() {
+    @Override
+    public void onPermissionStateChanged(String[] granted, String[] revoked) {
+      if (granted.length > 0) {
+        // if user granted permission via Settings, then finish this fragment
+        finishFragment();
+      }
     }
+  };
+
+  @Override
+  public void onStart() {
+    super.onStart();
+    Permissive.getPermissionStateObserver().subscribe(getContext(), stateListener,
+        getPermissiveMessenger().getRequestedPermissions());
+  }
+
+  @Override
+  public void onStop() {
+    super.onStop();
+    Permissive.getPermissionStateObserver().unsubscribe(stateListener);
   }
 
   @Override
@@ -27,10 +27,11 @@ import android.view.View;
 import android.widget.Toast;
 
 import com.github.jksiezni.permissive.Permissive;
+import com.github.jksiezni.permissive.PermissiveDispatcher;
 
 import java.util.Arrays;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements PermissiveDispatcher.Host {
 
   static {
     Permissive.registerGlobalRationale(Manifest.permission.WRITE_EXTERNAL_STORAGE, new AskUpFrontFragment());
@@ -54,6 +55,13 @@ public class MainActivity extends AppCompatActivity {
     }
   }
 
+  @Override
+  public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+    if (!PermissiveDispatcher.dispatchRequestPermissionsResult(this, requestCode, permissions, grantResults)) {
+      super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    }
+  }
+
   public void askForCameraPermission(View view) {
     new Permissive.Request(Manifest.permission.CAMERA)
         .withRationale(new AskInContextFragment())